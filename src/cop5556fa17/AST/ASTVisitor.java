@@ -52,5 +52,7 @@ public interface ASTVisitor {
 
 	Object visitExpression_Ident(Expression_Ident expression_Ident, Object arg) throws Exception;
 
+	Object visitErrorNode(ErrorNode errorNode, Object arg) throws Exception;
+
 	
 }
@@ -7,6 +7,7 @@ public class Declaration_Image extends Declaration {
 	public final Expression xSize;
 	public final Expression ySize;
 	public final String name;
+	public final int symbol;  //id of name in the symbol pool of the Scanner
 	public final Source source;
 
 	public Declaration_Image(Token firstToken, Expression xSize, Expression ySize, Token name,
@@ -15,6 +16,7 @@ public class Declaration_Image extends Declaration {
 		this.xSize = xSize;
 		this.ySize = ySize;
 		this.name = name.getText();
+		this.symbol = name.symbol();
 		this.source = source;
 	}
 
@@ -7,12 +7,14 @@ public class Declaration_SourceSink extends Declaration {
 	
 	public final Kind type;
 	public final String name;
+	public final int symbol;  //id of name in the symbol pool of the Scanner
 	public final Source source;
 	
 	public Declaration_SourceSink(Token firstToken, Token type, Token name, Source source) {
 		super(firstToken);
 		this.type = type.kind;
 		this.name = name.getText();
+		this.symbol = name.symbol();
 		this.source = source;
 	}
 
@@ -6,12 +6,14 @@ public class Declaration_Variable extends Declaration {
 
 	public final Token type;
 	public final String name;
+	public final int symbol;  //id of name in the symbol pool of the Scanner
 	public final Expression e;
 
 	public Declaration_Variable(Token firstToken, Token type, Token name, Expression e) {
 		super(firstToken);
 		this.type = type;
 		this.name = name.getText();
+		this.symbol = name.symbol();
 		this.e = e;
 	}
 
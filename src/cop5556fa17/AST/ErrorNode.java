@@ -0,0 +1,62 @@
+package cop5556fa17.AST;
+
+import cop5556fa17.Scanner.Token;
+
+/**
+ * A declaration or statement with a syntax error, in the Program returned by
+ * a recovering Parser.  Covers the tokens from firstToken up to the SEMI or
+ * the declaration that the Parser synchronized on.
+ */
+public class ErrorNode extends ASTNode {
+
+	public final Token errorToken;  //token at which the error was found
+	public final String message;
+
+	public ErrorNode(Token firstToken, Token errorToken, String message) {
+		super(firstToken);
+		this.errorToken = errorToken;
+		this.message = message;
+	}
+
+	@Override
+	public Object visit(ASTVisitor v, Object arg) throws Exception {
+		return v.visitErrorNode(this, arg);
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = super.hashCode();
+		result = prime * result + ((errorToken == null) ? 0 : errorToken.hashCode());
+		result = prime * result + ((message == null) ? 0 : message.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!super.equals(obj))
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		ErrorNode other = (ErrorNode) obj;
+		if (errorToken == null) {
+			if (other.errorToken != null)
+				return false;
+		} else if (!errorToken.equals(other.errorToken))
+			return false;
+		if (message == null) {
+			if (other.message != null)
+				return false;
+		} else if (!message.equals(other.message))
+			return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "ErrorNode [message=" + message + "]";
+	}
+
+}
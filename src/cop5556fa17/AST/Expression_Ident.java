@@ -56,12 +56,14 @@ import cop5556fa17.Scanner.Token;
 public class Expression_Ident extends Expression {
 	
 	public final String name;
+	public final int symbol;  //id of name in the symbol pool of the Scanner
 	
 	
 
 	public Expression_Ident(Token firstToken, Token ident) {
 		super(firstToken);
 		this.name = ident.getText();
+		this.symbol = ident.symbol();
 	}
 
 
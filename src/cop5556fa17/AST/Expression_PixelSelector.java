@@ -5,6 +5,7 @@ import cop5556fa17.Scanner.Token;
 public class Expression_PixelSelector extends Expression {
 	
 	public final String name;
+	public final int symbol;  //id of name in the symbol pool of the Scanner
 	public final Index index;
 	
 	boolean isCartesian;
@@ -20,6 +21,7 @@ public class Expression_PixelSelector extends Expression {
 	public Expression_PixelSelector(Token firstToken, Token name, Index index) {
 		super(firstToken);
 		this.name = name.getText();
+		this.symbol = name.symbol();
 		this.index = index;
 	}
 
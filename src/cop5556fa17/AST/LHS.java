@@ -5,6 +5,7 @@ import cop5556fa17.Scanner.Token;
 public class LHS extends ASTNode {
 
 	public final String name;
+	public final int symbol;  //id of name in the symbol pool of the Scanner
 	public final Index index;
 	public Declaration declaration;
 	public boolean isCartesian;
@@ -12,6 +13,7 @@ public class LHS extends ASTNode {
 	public LHS(Token firstToken, Token name, Index index) {
 		super(firstToken);
 		this.name = name.getText();
+		this.symbol = name.symbol();
 		this.index = index;
 	}
 
@@ -5,10 +5,12 @@ import cop5556fa17.Scanner.Token;
 public class Sink_Ident extends Sink {
 	
 	public final String name;
+	public final int symbol;  //id of name in the symbol pool of the Scanner
 	
 	public Sink_Ident(Token firstToken, Token name) {
 		super(firstToken);
 		this.name = name.getText();
+		this.symbol = name.symbol();
 	}
 
 	@Override
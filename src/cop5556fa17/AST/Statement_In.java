@@ -5,6 +5,7 @@ import cop5556fa17.Scanner.Token;
 public class Statement_In extends Statement {
 	
 	public final String name;
+	public final int symbol;  //id of name in the symbol pool of the Scanner
 	public final Source source;
 	
 	Declaration dec;
@@ -21,6 +22,7 @@ public class Statement_In extends Statement {
 	public Statement_In(Token firstToken, Token name, Source source) {
 		super(firstToken);
 		this.name = name.getText();
+		this.symbol = name.symbol();
 		this.source = source;
 	}
 
@@ -5,6 +5,7 @@ import cop5556fa17.Scanner.Token;
 public class Statement_Out extends Statement {
 
 	public final String name;
+	public final int symbol;  //id of name in the symbol pool of the Scanner
 	public final Sink sink;
 	
 	Declaration dec;  //declaration for name.  Set during type checking
@@ -14,6 +15,7 @@ public class Statement_Out extends Statement {
 	public Statement_Out(Token firstToken, Token name, Sink sink) {
 		super(firstToken);
 		this.name = name.getText();
+		this.symbol = name.symbol();
 		this.sink = sink;
 	}
 
@@ -0,0 +1,58 @@
+package cop5556fa17;
+
+import java.io.Reader;
+import java.nio.ByteBuffer;
+
+/**
+ * Reader over a buffer of ASCII bytes, such as a memory mapped source file.
+ *
+ * Each byte is widened to the char with the same value, so no charset
+ * decoder, intermediate String or full-size char array is involved.  Bytes
+ * outside the ASCII range are read as ISO-8859-1.
+ *
+ * The buffer is also used by the Scanner to re-read the text of tokens that
+ * are no longer in its window, so its position is never changed: this reader
+ * keeps its own read position.
+ */
+final class ByteBufferReader extends Reader {
+
+	final ByteBuffer bytes;
+
+	/**
+	 * position of the next byte to read
+	 */
+	private int next;
+
+	/**
+	 * bytes copied out of the buffer in bulk before being widened
+	 */
+	private byte[] scratch = new byte[0];
+
+	ByteBufferReader(ByteBuffer bytes) {
+		this.bytes = bytes;
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) {
+		int n = Math.min(len, bytes.limit() - next);
+		if (n <= 0) {
+			return len == 0 ? 0 : -1;
+		}
+		if (scratch.length < n) {
+			scratch = new byte[n];
+		}
+		ByteBuffer view = bytes.duplicate();
+		view.position(next);
+		view.get(scratch, 0, n);
+		for (int i = 0; i < n; i++) {
+			cbuf[off + i] = (char) (scratch[i] & 0xff);
+		}
+		next += n;
+		return n;
+	}
+
+	@Override
+	public void close() {
+	}
+
+}
@@ -0,0 +1,43 @@
+package cop5556fa17;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the ScannerTest cases against Scanners created from the ISO-8859-1
+ * bytes of their input.
+ */
+public class ByteScannerTest extends ScannerTest {
+
+	@Override
+	Scanner newScanner(String input) {
+		return new Scanner(input.getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * Scans an input much larger than the Scanner's window, with non ASCII
+	 * characters in comments and string literals, and checks that all tokens
+	 * are retained with the same text as for a Scanner created from a String.
+	 */
+	@Test
+	public void largeInputTest() throws Exception {
+		StringBuilder sb = new StringBuilder("prog\n");
+		for (int i = 0; i < 5000; i++) {
+			sb.append("url u").append(i).append(" = \"caf/").append(i).append("\"; //  ").append(i)
+					.append('\n');
+		}
+		String input = sb.toString();
+		Scanner scanner = newScanner(input).scan();
+		Scanner expected = new Scanner(input).scan();
+		assertTrue(scanner.chars.length < input.length());
+		assertEquals(expected.size(), scanner.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.tokenAt(i).toString(), scanner.tokenAt(i).toString());
+			assertEquals(expected.tokenAt(i).getText(), scanner.tokenAt(i).getText());
+		}
+	}
+
+}
@@ -0,0 +1,23 @@
+package cop5556fa17;
+
+import cop5556fa17.AST.ASTNode;
+
+/**
+ * Receives each declaration and statement of a program as soon as the Parser
+ * has parsed it and its SEMI, in order, see Parser.parse(ItemConsumer).  The
+ * items of a recovering Parser include its ErrorNodes.
+ *
+ * An exception thrown by accept stops the parse and is thrown by
+ * Parser.parse(ItemConsumer), so a consumer such as a type checker can
+ * report the first error of the program without waiting for the rest of it
+ * to be scanned and parsed.
+ *
+ */
+public interface ItemConsumer {
+
+	/**
+	 * Called with each Declaration, Statement or ErrorNode of the program.
+	 */
+	void accept(ASTNode item) throws Exception;
+
+}
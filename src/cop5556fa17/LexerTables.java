@@ -0,0 +1,193 @@
+package cop5556fa17;
+
+import cop5556fa17.Scanner.State;
+
+/**
+ * Character class and transition tables for the table driven mode of the
+ * Scanner, see Scanner.tableDriven.
+ *
+ * Each ASCII character belongs to one of the character classes below, given
+ * by charClass.  Characters outside the ASCII range are in class OTHER.
+ *
+ * transitions[s][c] describes what the Scanner does in the state with ordinal
+ * s on a character of class c.  An entry is an action, in the high bits, and
+ * the ordinal of the next state, in the low 8 bits.
+ *
+ */
+final class LexerTables {
+
+	/*
+	 * character classes
+	 */
+	static final byte OTHER = 0;
+	static final byte ZERO = 1;
+	static final byte DIGIT = 2; // 1 to 9
+	static final byte LETTER = 3; // letters, _ and $
+	static final byte QUOTE = 4;
+	static final byte BLANK = 5; // space, tab and form feed
+	static final byte SLASH = 6;
+	static final byte LF = 7;
+	static final byte CR = 8;
+	static final byte BACKSLASH = 9;
+	static final byte NUL = 10; // EOFchar
+	static final byte OPERATOR = 11; // operators and separators other than /
+	static final int CLASS_COUNT = 12;
+
+	/*
+	 * actions
+	 */
+	/** consume the character */
+	static final int ADVANCE = 0;
+	/** change state without consuming the character */
+	static final int GOTO = 1;
+	/** consume a \n */
+	static final int NEWLINE = 2;
+	/** consume a \r and a following \n */
+	static final int RETURN = 3;
+	/** add the INTEGER_LITERAL 0 */
+	static final int ZERO_LITERAL = 4;
+	/** add a one or two character operator or separator */
+	static final int OPERATOR_TOKEN = 5;
+	/** add the EOF token, or report an EOFchar before the end of input */
+	static final int END_OF_INPUT = 6;
+	/** report an invalid character */
+	static final int INVALID = 7;
+	/** add the INTEGER_LITERAL ending before the character */
+	static final int END_DIGITS = 8;
+	/** add the identifier, keyword or boolean literal ending before the character */
+	static final int END_IDENT = 9;
+	/** add the OP_DIV before the character */
+	static final int END_DIV = 10;
+	/** check and consume an escape sequence in a string literal */
+	static final int ESCAPE = 11;
+	/** add the STRING_LITERAL ending with the character */
+	static final int END_STRING = 12;
+	/** report a line terminator in a string literal */
+	static final int LINE_IN_STRING = 13;
+	/** report an EOFchar in a string literal */
+	static final int EOF_IN_STRING = 14;
+	/** consume the character and the blanks that follow it, see Scanner.skipBlanks */
+	static final int SKIP_BLANKS = 15;
+	/** consume the character and the rest of the comment, see Scanner.skipComment */
+	static final int SKIP_COMMENT = 16;
+
+	static final int STATE_MASK = 0xff;
+	static final int ACTION_SHIFT = 8;
+
+	static final byte[] charClass = new byte[128];
+
+	static final int[][] transitions = new int[State.values().length][CLASS_COUNT];
+
+	/**
+	 * Two character operators, indexed by first and then second character.
+	 * Null for characters that do not start a two character operator.
+	 */
+	static final Scanner.Kind[][] operatorPairs = new Scanner.Kind[128][];
+
+	/**
+	 * characters that may follow a \ in a string literal
+	 */
+	static final boolean[] escapes = new boolean[128];
+
+	static {
+		for (char ch = 'a'; ch <= 'z'; ch++) {
+			charClass[ch] = LETTER;
+		}
+		for (char ch = 'A'; ch <= 'Z'; ch++) {
+			charClass[ch] = LETTER;
+		}
+		charClass['_'] = LETTER;
+		charClass['$'] = LETTER;
+		for (char ch = '1'; ch <= '9'; ch++) {
+			charClass[ch] = DIGIT;
+		}
+		for (char ch = 0; ch < 128; ch++) {
+			if (Scanner.operatorKinds[ch] != null) {
+				charClass[ch] = OPERATOR;
+			}
+		}
+		charClass['0'] = ZERO;
+		charClass['"'] = QUOTE;
+		charClass[' '] = BLANK;
+		charClass['\t'] = BLANK;
+		charClass['\f'] = BLANK;
+		charClass['/'] = SLASH;
+		charClass['\n'] = LF;
+		charClass['\r'] = CR;
+		charClass['\\'] = BACKSLASH;
+		charClass[Scanner.EOFchar] = NUL;
+
+		for (String text : Scanner.kindMap.keySet()) {
+			if (text.length() == 2 && !Character.isJavaIdentifierStart(text.charAt(0))) {
+				if (operatorPairs[text.charAt(0)] == null) {
+					operatorPairs[text.charAt(0)] = new Scanner.Kind[128];
+				}
+				operatorPairs[text.charAt(0)][text.charAt(1)] = Scanner.kindMap.get(text);
+			}
+		}
+
+		for (char ch : "btf\"'n\\r".toCharArray()) {
+			escapes[ch] = true;
+		}
+
+		on(State.START, INVALID, State.START);
+		on(State.START, ZERO, ZERO_LITERAL, State.START);
+		on(State.START, DIGIT, GOTO, State.IN_DIGIT);
+		on(State.START, LETTER, GOTO, State.IN_IDENT);
+		on(State.START, QUOTE, ADVANCE, State.STRING_LIT);
+		on(State.START, BLANK, SKIP_BLANKS, State.START);
+		on(State.START, SLASH, ADVANCE, State.AFTER_DIV);
+		on(State.START, LF, NEWLINE, State.START);
+		on(State.START, CR, RETURN, State.START);
+		on(State.START, NUL, END_OF_INPUT, State.START);
+		on(State.START, OPERATOR, OPERATOR_TOKEN, State.START);
+
+		on(State.IN_DIGIT, END_DIGITS, State.START);
+		on(State.IN_DIGIT, ZERO, ADVANCE, State.IN_DIGIT);
+		on(State.IN_DIGIT, DIGIT, ADVANCE, State.IN_DIGIT);
+
+		on(State.IN_IDENT, END_IDENT, State.START);
+		on(State.IN_IDENT, LETTER, ADVANCE, State.IN_IDENT);
+		on(State.IN_IDENT, ZERO, ADVANCE, State.IN_IDENT);
+		on(State.IN_IDENT, DIGIT, ADVANCE, State.IN_IDENT);
+
+		on(State.AFTER_DIV, END_DIV, State.START);
+		on(State.AFTER_DIV, SLASH, GOTO, State.COMMENT);
+
+		on(State.COMMENT, SKIP_COMMENT, State.COMMENT);
+		on(State.COMMENT, LF, GOTO, State.START);
+		on(State.COMMENT, CR, GOTO, State.START);
+		on(State.COMMENT, NUL, GOTO, State.START);
+
+		on(State.STRING_LIT, ADVANCE, State.STRING_LIT);
+		on(State.STRING_LIT, QUOTE, END_STRING, State.START);
+		on(State.STRING_LIT, LF, LINE_IN_STRING, State.START);
+		on(State.STRING_LIT, CR, LINE_IN_STRING, State.START);
+		on(State.STRING_LIT, NUL, EOF_IN_STRING, State.START);
+		on(State.STRING_LIT, BACKSLASH, ESCAPE, State.STRING_LIT);
+	}
+
+	/**
+	 * Sets the default transition of state, for all character classes.
+	 */
+	private static void on(State state, int action, State next) {
+		for (int c = 0; c < CLASS_COUNT; c++) {
+			on(state, (byte) c, action, next);
+		}
+	}
+
+	private static void on(State state, byte charClass, int action, State next) {
+		transitions[state.ordinal()][charClass] = action << ACTION_SHIFT | next.ordinal();
+	}
+
+	/**
+	 * Returns the character class of ch.
+	 */
+	static byte classOf(char ch) {
+		return ch < 128 ? charClass[ch] : OTHER;
+	}
+
+	private LexerTables() {
+	}
+
+}
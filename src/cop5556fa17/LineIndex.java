@@ -0,0 +1,127 @@
+package cop5556fa17;
+
+import java.util.Arrays;
+
+/**
+ * Positions of the starts of the lines of the input of a Scanner, in
+ * increasing order.
+ *
+ * The Scanner adds the position after each line terminator as it scans, so
+ * the line and position in line of a token are only computed, by binary
+ * search, when a Token object is created.
+ *
+ */
+final class LineIndex {
+
+	static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * starts[i] is the position of the start of line first + i + 1
+	 */
+	int[] starts = new int[INITIAL_CAPACITY];
+
+	/**
+	 * number of line starts in the index
+	 */
+	int size;
+
+	/**
+	 * Number of line starts that have been dropped with discard, that is, the
+	 * number of the line starting at starts[0] minus 1.
+	 */
+	int first;
+
+	/**
+	 * Creates an index whose first line starts at the given position.
+	 */
+	LineIndex(int start) {
+		add(start);
+	}
+
+	void add(int start) {
+		if (size == starts.length) {
+			starts = Arrays.copyOf(starts, size * 2);
+		}
+		starts[size++] = start;
+	}
+
+	/**
+	 * Removes all line starts, keeping the array for reuse, and starts the
+	 * first line at the given position.
+	 */
+	void clear(int start) {
+		size = 0;
+		first = 0;
+		add(start);
+	}
+
+	/**
+	 * Appends the line starts from index from to index to of other, adding
+	 * offset to each.
+	 */
+	void append(LineIndex other, int from, int to, int offset) {
+		int n = to - from;
+		if (size + n > starts.length) {
+			starts = Arrays.copyOf(starts, Math.max(size + n, starts.length * 2));
+		}
+		for (int i = 0; i < n; i++) {
+			starts[size + i] = other.starts[from + i] + offset;
+		}
+		size += n;
+	}
+
+	/**
+	 * Returns the index in starts of the line containing pos, that is, of the
+	 * last line start at or before pos.
+	 *
+	 * Precondition: starts[0] <= pos
+	 */
+	int indexOf(int pos) {
+		int low = 0;
+		int high = size - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (starts[mid] <= pos) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the index of the first line start greater than pos, or size if
+	 * there is none.
+	 */
+	int after(int pos) {
+		int i = indexOf(pos);
+		return starts[i] <= pos ? i + 1 : i;
+	}
+
+	/**
+	 * Drops the line starts before the start of the line containing pos.
+	 */
+	void discard(int pos) {
+		int n = indexOf(pos);
+		if (n <= 0) {
+			return;
+		}
+		size -= n;
+		System.arraycopy(starts, n, starts, 0, size);
+		first += n;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Number of bytes held by the array of this index, including the array
+	 * header.  Used by the memory benchmark.
+	 */
+	long arrayBytes() {
+		return 16 + 4L * starts.length;
+	}
+
+}
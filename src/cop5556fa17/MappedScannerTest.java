@@ -0,0 +1,52 @@
+package cop5556fa17;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import cop5556fa17.AST.Program;
+
+/**
+ * Runs the ScannerTest cases against Scanners that read their input from a
+ * memory mapped file.
+ */
+public class MappedScannerTest extends ScannerTest {
+
+	@Override
+	Scanner newScanner(String input) {
+		try {
+			Path path = Files.createTempFile("scanner", ".dsl");
+			File file = path.toFile();
+			file.deleteOnExit();
+			Files.write(path, input.getBytes(StandardCharsets.ISO_8859_1));
+			return new Scanner(path);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Parses a program much larger than the Scanner's window, so that the
+	 * text of tokens such as the program name has to be re-read from the file.
+	 */
+	@Test
+	public void mappedParseTest() throws Exception {
+		StringBuilder sb = new StringBuilder("prog\n");
+		for (int i = 0; i < 5000; i++) {
+			sb.append("int v").append(i).append(" = ").append(i).append(" * 2; // v").append(i).append('\n');
+		}
+		String input = sb.toString();
+		Scanner scanner = newScanner(input);
+		Program ast = new Parser(scanner).parse();
+		assertTrue(scanner.chars.length < input.length());
+		assertEquals(new Parser(new Scanner(input).scan()).parse().toString(), ast.toString());
+	}
+
+}
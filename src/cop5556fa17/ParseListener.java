@@ -0,0 +1,51 @@
+package cop5556fa17;
+
+import cop5556fa17.Scanner.Token;
+
+/**
+ * Receives the events of a Parser: entering and leaving the main rules of the
+ * grammar, and consuming each token.  Set with Parser.tracing.
+ *
+ * The rules reported are program, declaration, statement, source, sink and
+ * expression.  A rule that throws a SyntaxException is entered but not
+ * exited, except by a recovering Parser, which exits the open rules of a
+ * declaration or statement with an error at the token of the error, before
+ * it synchronizes.
+ *
+ * The default listener, NONE, does nothing, so a Parser that is not traced
+ * pays only for calls that the JIT compiler removes.
+ *
+ */
+public interface ParseListener {
+
+	ParseListener NONE = new ParseListener() {
+		@Override
+		public void enter(String rule, Token first) {
+		}
+
+		@Override
+		public void exit(String rule, Token next) {
+		}
+
+		@Override
+		public void consume(Token token) {
+		}
+	};
+
+	/**
+	 * Called when the Parser starts the given rule at token first.
+	 */
+	void enter(String rule, Token first);
+
+	/**
+	 * Called when the Parser has finished the given rule, with the token
+	 * after it.
+	 */
+	void exit(String rule, Token next);
+
+	/**
+	 * Called before the Parser moves past token.
+	 */
+	void consume(Token token);
+
+}
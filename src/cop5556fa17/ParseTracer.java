@@ -0,0 +1,88 @@
+package cop5556fa17;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+import cop5556fa17.Scanner.Token;
+
+/**
+ * ParseListener that writes one line per event, indented by the depth of the
+ * rule, for example for "prog int k;"
+ *
+ * enter program 1:1
+ *   consume IDENTIFIER 1:1 prog
+ *   enter declaration 1:6
+ *     consume KW_int 1:6 int
+ *     consume IDENTIFIER 1:10 k
+ *   exit declaration 1:11
+ *   consume SEMI 1:11 ;
+ * exit program 1:12
+ *
+ * where each position is the line and position in the line of the token of
+ * the event.  Output is buffered, call flush when the parse is done.  An
+ * IOException of the writer is thrown as an UncheckedIOException.
+ *
+ */
+final class ParseTracer implements ParseListener {
+
+	private final Writer out;
+
+	private int depth;
+
+	ParseTracer(Writer out) {
+		this.out = out instanceof BufferedWriter ? out : new BufferedWriter(out);
+	}
+
+	@Override
+	public void enter(String rule, Token first) {
+		line("enter", rule, first, null);
+		depth++;
+	}
+
+	@Override
+	public void exit(String rule, Token next) {
+		depth--;
+		line("exit", rule, next, null);
+	}
+
+	@Override
+	public void consume(Token token) {
+		line("consume", token.kind.name(), token, token.text());
+	}
+
+	/**
+	 * Writes any buffered events.
+	 */
+	void flush() {
+		try {
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void line(String event, String name, Token token, CharSequence text) {
+		try {
+			for (int i = 0; i < depth; i++) {
+				out.write("  ");
+			}
+			out.write(event);
+			out.write(' ');
+			out.write(name);
+			out.write(' ');
+			out.write(Integer.toString(token.line));
+			out.write(':');
+			out.write(Integer.toString(token.pos_in_line));
+			if (text != null) {
+				out.write(' ');
+				out.append(text);
+			}
+			out.write('\n');
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
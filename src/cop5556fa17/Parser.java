@@ -1,12 +1,18 @@
 package cop5556fa17;
 
 import cop5556fa17.Scanner.Kind;
+import cop5556fa17.Scanner.LexicalException;
 import cop5556fa17.Scanner.Token;
 import static cop5556fa17.Scanner.Kind.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import cop5556fa17.AST.*;
 
 public class Parser {
@@ -16,27 +22,215 @@ public class Parser {
 		Token t;
 
 		public SyntaxException(Token t, String message) {
-			super(message);
+			// a recovering Parser may record an error for every item, so they
+			// are created without the cost of a stack trace
+			super(message, null, true, errors == null);
 			this.t = t;
 		}
 	}
 
 	Scanner scanner;
 	Token t;
-	public static final HashSet<Kind> unaryExpressionStartSet;
-	public static final HashSet<Kind> functionNameSet;
+
+	/**
+	 * Index in the scanner of the current token t. The parser walks the
+	 * scanner's tokens with this cursor instead of the scanner's internal
+	 * iterator.
+	 */
+	int cursor;
+
+	/**
+	 * Receives the rules entered and exited and the tokens consumed, see
+	 * tracing.
+	 */
+	ParseListener listener = ParseListener.NONE;
+
+	/**
+	 * The rules entered but not yet exited, openRules[0 .. openDepth - 1],
+	 * so that a recovering Parser can exit the rules of an item with an
+	 * error, see closeRules.
+	 */
+	private String[] openRules = new String[16];
+	private int openDepth;
+
+	/**
+	 * Receives each declaration and statement as it is parsed during a call
+	 * of parse(ItemConsumer), null otherwise.
+	 */
+	private ItemConsumer consumer = null;
+
+	/**
+	 * true if expressions are parsed with an explicit stack, see
+	 * explicitStack.
+	 */
+	boolean explicitStack;
+
+	/**
+	 * Stack of the explicit stack expression parser, frames[0 .. depth - 1].
+	 * Frames are reused, so that parsing allocates only when the stack grows.
+	 */
+	private Frame[] frames;
+	private int depth;
+
+	/**
+	 * The syntax errors found so far by a recovering Parser, null if this
+	 * Parser is not recovering.
+	 */
+	private List<SyntaxException> errors = null;
+
+	/**
+	 * The Program returned by the last call of parse or reparse, null before,
+	 * and the positions of the first tokens of its declarations and
+	 * statements, itemStarts[0 .. ast.decsAndStatements.size() - 1], in the
+	 * input of scanner, see reparse.  itemStarts is null if the Program was
+	 * parsed by a recovering Parser.
+	 */
+	private Program ast;
+	private int[] itemStarts;
+
+	/**
+	 * Default number of tokens per segment for parseParallel
+	 */
+	static final int PARALLEL_SEGMENT_SIZE = 1 << 16;
+
+	/**
+	 * The FIRST sets of the grammar that the Parser decides on, as bitmasks
+	 * over Kind.ordinal(), so that each decision is a single AND, see in.
+	 * Each set is built from the sets of the rules it derives from:
+	 * 
+	 * Program ::= IDENTIFIER ( Declaration SEMI | Statement SEMI )*
+	 * 
+	 * Declaration ::= VariableDeclaration | ImageDeclaration |
+	 * SourceSinkDeclaration
+	 * 
+	 * Statement ::= IDENTIFIER ( OP_RARROW Sink | OP_LARROW Source | LhsSelector?
+	 * OP_ASSIGN Expression )
+	 * 
+	 * UnaryExpression ::= ( OP_PLUS | OP_MINUS | OP_EXCL ) UnaryExpression |
+	 * Primary | IdentOrPixelSelectorExpression | PredefinedName
+	 * 
+	 * Primary ::= INTEGER_LITERAL | LPAREN Expression RPAREN |
+	 * FunctionApplication | BOOLEAN_LITERAL
+	 */
+	static final long FIRST_VARIABLE_DECLARATION = set(KW_int, KW_boolean);
+	static final long FIRST_IMAGE_DECLARATION = set(KW_image);
+	static final long FIRST_SOURCE_SINK_DECLARATION = set(KW_url, KW_file);
+	static final long FIRST_DECLARATION = FIRST_VARIABLE_DECLARATION | FIRST_IMAGE_DECLARATION
+			| FIRST_SOURCE_SINK_DECLARATION;
+	static final long FIRST_STATEMENT = set(IDENTIFIER);
+	static final long FIRST_PROGRAM_ITEM = FIRST_DECLARATION | FIRST_STATEMENT;
+	/**
+	 * the tokens after the IDENTIFIER of an assignment statement
+	 */
+	static final long FIRST_ASSIGNMENT_REST = set(LSQUARE, OP_ASSIGN);
+	static final long FIRST_FUNCTION_NAME = set(KW_sin, KW_cos, KW_atan, KW_abs, KW_cart_x, KW_cart_y, KW_polar_a,
+			KW_polar_r);
+	static final long FIRST_PREDEFINED_NAME = set(KW_x, KW_y, KW_r, KW_a, KW_X, KW_Y, KW_Z, KW_A, KW_R, KW_DEF_X,
+			KW_DEF_Y);
+
+	/**
+	 * Binding power of each binary operator, indexed by Kind.ordinal(), from 1
+	 * for OP_OR, which binds most loosely, to 6 for OP_TIMES, OP_DIV and
+	 * OP_MOD. 0 for all other kinds, which end a binary expression.
+	 */
+	static final int[] bindingPower = new int[Kind.values().length];
 
 	static {
-		unaryExpressionStartSet = new HashSet<Kind>(Arrays.asList(Kind.KW_x, Kind.KW_y, Kind.KW_r, Kind.KW_a, Kind.KW_X,
-				Kind.KW_Y, Kind.KW_Z, Kind.KW_A, Kind.KW_R, Kind.KW_DEF_X, Kind.KW_DEF_Y));
+		Kind[][] levels = { { OP_OR }, { OP_AND }, { OP_EQ, OP_NEQ }, { OP_LT, OP_GT, OP_LE, OP_GE },
+				{ OP_PLUS, OP_MINUS }, { OP_TIMES, OP_DIV, OP_MOD } };
+		for (int power = 1; power <= levels.length; power++) {
+			for (Kind kind : levels[power - 1]) {
+				bindingPower[kind.ordinal()] = power;
+			}
+		}
+	}
 
-		functionNameSet = new HashSet<Kind>(Arrays.asList(Kind.KW_sin, Kind.KW_cos, Kind.KW_atan, Kind.KW_abs,
-				Kind.KW_cart_x, Kind.KW_cart_y, Kind.KW_polar_a, Kind.KW_polar_r));
+	/**
+	 * Returns the bitmask of the given kinds.
+	 */
+	static long set(Kind... kinds) {
+		long set = 0;
+		for (Kind kind : kinds) {
+			if (kind.ordinal() >= Long.SIZE) {
+				throw new IllegalStateException("too many kinds for a bitmask: " + kind);
+			}
+			set |= 1L << kind.ordinal();
+		}
+		return set;
+	}
+
+	/**
+	 * Returns true if kind is in the bitmask set.
+	 */
+	static boolean in(long set, Kind kind) {
+		return (set & 1L << kind.ordinal()) != 0;
 	}
 
 	Parser(Scanner scanner) {
 		this.scanner = scanner;
-		t = scanner.nextToken();
+		cursor = scanner.cursor();
+		t = scanner.tokenAt(cursor);
+	}
+
+	/**
+	 * Reports the events of this Parser to listener, for example a
+	 * ParseTracer, instead of to ParseListener.NONE.
+	 * 
+	 * @return this Parser
+	 */
+	Parser tracing(ParseListener listener) {
+		this.listener = listener;
+		return this;
+	}
+
+	/**
+	 * Switches this Parser to parsing expressions with an explicit stack on
+	 * the heap instead of with recursive calls, so that the nesting of
+	 * parentheses, conditional expressions, unary operators, selectors and
+	 * function applications is limited only by memory, not by the size of
+	 * the stack of the thread.  The AST, the exceptions and the events of
+	 * the listener are the same as those of the recursive parser.
+	 * 
+	 * @return this Parser
+	 */
+	Parser explicitStack() {
+		explicitStack = true;
+		return this;
+	}
+
+	/**
+	 * Makes this Parser recover from syntax errors instead of throwing a
+	 * SyntaxException on the first one, so that all the errors of a program
+	 * are found in one parse.  Each error is recorded, see errors, and the
+	 * Parser synchronizes in panic mode: it skips tokens up to and including
+	 * the next SEMI, or up to the next token that starts a declaration
+	 * (KW_int, KW_boolean, KW_image, KW_url or KW_file), whichever comes
+	 * first, and replaces the declaration or statement with an ErrorNode.
+	 * 
+	 * Every token is skipped at most once and no token is scanned again, so
+	 * recovering parses stay linear.
+	 * 
+	 * @return this Parser
+	 */
+	Parser recovering() {
+		errors = new ArrayList<>();
+		return this;
+	}
+
+	/**
+	 * Returns the Program returned by the last call of parse or reparse, or
+	 * null if there was none.
+	 */
+	Program lastProgram() {
+		return ast;
+	}
+
+	/**
+	 * Returns the syntax errors found so far by a recovering Parser, in order
+	 * of position.  Empty for a Parser that is not recovering.
+	 */
+	public List<SyntaxException> errors() {
+		return errors == null ? Collections.<SyntaxException> emptyList() : Collections.unmodifiableList(errors);
 	}
 
 	/**
@@ -50,6 +244,62 @@ public class Parser {
 		return p;
 	}
 
+	/**
+	 * Parses the input as parse does, handing each declaration and statement
+	 * to consumer as soon as it and its SEMI have been parsed, instead of
+	 * only returning them in the Program.  With a Scanner that has not been
+	 * scanned, scanning, parsing and consuming are interleaved item by item.
+	 * 
+	 * An exception thrown by consumer stops the parse and is thrown here, so
+	 * the first error reported is the first in program order: an exception
+	 * of consumer for an item comes before a syntax error in a later item.
+	 * 
+	 * @return the Program, whose items have all been consumed
+	 * @throws SyntaxException
+	 * @throws Exception
+	 *             thrown by consumer
+	 */
+	public Program parse(ItemConsumer consumer) throws Exception {
+		this.consumer = consumer;
+		try {
+			return parse();
+		} catch (ConsumerException e) {
+			throw e.getCause();
+		} finally {
+			this.consumer = null;
+		}
+	}
+
+	/**
+	 * Carries an exception of the consumer through the parsing methods, which
+	 * only declare SyntaxException, to parse(ItemConsumer).
+	 */
+	@SuppressWarnings("serial")
+	private static final class ConsumerException extends RuntimeException {
+		ConsumerException(Exception cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized Exception getCause() {
+			return (Exception) super.getCause();
+		}
+	}
+
+	/**
+	 * Adds item to decsAndStatements and hands it to the consumer, if any.
+	 */
+	private void emit(ArrayList<ASTNode> decsAndStatements, ASTNode item) {
+		decsAndStatements.add(item);
+		if (consumer != null) {
+			try {
+				consumer.accept(item);
+			} catch (Exception e) {
+				throw new ConsumerException(e);
+			}
+		}
+	}
+
 	/**
 	 * Program ::= IDENTIFIER ( Declaration SEMI | Statement SEMI )*
 	 * 
@@ -59,33 +309,403 @@ public class Parser {
 	 */
 	Program program() throws SyntaxException {
 		Token firstToken = t;
+		openDepth = 0;
+		enter("program", firstToken);
 		ArrayList<ASTNode> decsAndStatements = new ArrayList<ASTNode>();
+		if (errors != null) {
+			recoveringProgram(decsAndStatements);
+			Program p = new Program(firstToken, firstToken, decsAndStatements);
+			exit("program", t);
+			ast = p;
+			itemStarts = null;
+			return p;
+		}
 		match(IDENTIFIER);
-		while (t.kind == Kind.KW_int || t.kind == Kind.KW_boolean || t.kind == Kind.KW_image || t.kind == Kind.KW_url
-				|| t.kind == Kind.KW_file || t.kind == Kind.IDENTIFIER) {
-			if (t.kind == Kind.KW_int || t.kind == Kind.KW_boolean || t.kind == Kind.KW_image || t.kind == Kind.KW_url
-					|| t.kind == Kind.KW_file) {
+		int[] starts = new int[16];
+		while (in(FIRST_PROGRAM_ITEM, t.kind)) {
+			starts = addStart(starts, decsAndStatements.size(), t.pos);
+			ASTNode item;
+			if (in(FIRST_DECLARATION, t.kind)) {
+				item = declaration();
+			} else {
+				item = statement();
+			}
+			match(SEMI);
+			emit(decsAndStatements, item);
+		}
+		Program p = new Program(firstToken, firstToken, decsAndStatements);
+		exit("program", t);
+		ast = p;
+		itemStarts = starts;
+		return p;
+	}
+
+	/**
+	 * Parses the program in segments of about PARALLEL_SEGMENT_SIZE tokens on
+	 * the common ForkJoinPool.  See parseParallel(ForkJoinPool, int).
+	 * 
+	 * @throws SyntaxException
+	 */
+	public Program parseParallel() throws SyntaxException {
+		return parseParallel(ForkJoinPool.commonPool(), PARALLEL_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Like parse, but splits the tokens after the name of the program into
+	 * segments of about segmentSize tokens and parses the segments in
+	 * parallel on the given pool.  The Program, and the SyntaxException
+	 * thrown for an invalid program, are the same as those of parse.
+	 * 
+	 * SEMI appears in the grammar only at the end of a declaration or
+	 * statement, and a declaration or statement contains no other SEMI.  So
+	 * if the program is valid up to a SEMI, the sequential parser is at the
+	 * start of a declaration or statement after it.  Each segment therefore
+	 * ends just after a SEMI, and is parsed as a sequence of declarations
+	 * and statements by its own Parser.  The declarations and statements of
+	 * the segments are then concatenated in order.  If some segments have
+	 * errors, the error of the first of them is the one that the sequential
+	 * parser finds, since the segments before it are valid.
+	 * 
+	 * The Scanner is scanned first, if necessary.  A streaming Scanner, or a
+	 * Parser that is recovering or has a listener, parses with parse, as
+	 * do programs of at most segmentSize tokens.
+	 * 
+	 * @param pool
+	 * @param segmentSize
+	 * @return
+	 * @throws SyntaxException
+	 *             the error in the first segment with an error
+	 */
+	public Program parseParallel(ForkJoinPool pool, int segmentSize) throws SyntaxException {
+		if (scanner.streaming || errors != null || listener != ParseListener.NONE) {
+			return parse();
+		}
+		try {
+			scanner.scan();
+		} catch (LexicalException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+		int eof = scanner.size() - 1;
+		if (eof - cursor <= segmentSize) {
+			return parse();
+		}
+		Token firstToken = t;
+		match(IDENTIFIER);
+		List<Callable<Segment>> tasks = new ArrayList<>();
+		int begin = cursor;
+		while (begin < eof) {
+			int end = Math.min(begin + segmentSize, eof);
+			while (end < eof && scanner.kindAt(end - 1) != SEMI) {
+				end++;
+			}
+			final Segment segment = new Segment(begin, end);
+			tasks.add(new Callable<Segment>() {
+				public Segment call() {
+					return parseSegment(segment);
+				}
+			});
+			begin = end;
+		}
+		List<Future<Segment>> results = pool.invokeAll(tasks);
+		List<Segment> segments = new ArrayList<>();
+		int size = 0;
+		for (Future<Segment> result : results) {
+			Segment segment;
+			try {
+				segment = result.get();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+			if (segment.error != null) {
+				throw segment.error;
+			}
+			segments.add(segment);
+			size += segment.decsAndStatements.size();
+		}
+		ArrayList<ASTNode> decsAndStatements = new ArrayList<ASTNode>(size);
+		int[] starts = new int[Math.max(size, 16)];
+		for (Segment segment : segments) {
+			System.arraycopy(segment.starts, 0, starts, decsAndStatements.size(), segment.decsAndStatements.size());
+			decsAndStatements.addAll(segment.decsAndStatements);
+		}
+		cursor = eof;
+		t = scanner.tokenAt(cursor);
+		Program p = new Program(firstToken, firstToken, decsAndStatements);
+		matchEOF();
+		ast = p;
+		itemStarts = starts;
+		return p;
+	}
+
+	/**
+	 * The declarations and statements parsed from the tokens with indexes
+	 * from begin to end, and the positions of their first tokens, or the
+	 * SyntaxException in them.
+	 */
+	private static final class Segment {
+		final int begin;
+		final int end;
+		final ArrayList<ASTNode> decsAndStatements = new ArrayList<ASTNode>();
+		int[] starts = new int[16];
+		SyntaxException error;
+
+		Segment(int begin, int end) {
+			this.begin = begin;
+			this.end = end;
+		}
+	}
+
+	/**
+	 * Parses the declarations and statements of segment with a new Parser,
+	 * as program does.
+	 */
+	private Segment parseSegment(Segment segment) {
+		Parser parser = new Parser(scanner);
+		parser.explicitStack = explicitStack;
+		parser.cursor = segment.begin;
+		parser.t = scanner.tokenAt(segment.begin);
+		try {
+			while (parser.cursor < segment.end) {
+				Kind kind = parser.t.kind;
+				if (!in(FIRST_PROGRAM_ITEM, kind)) {
+					// where the loop of program stops, and matchEOF throws
+					parser.matchEOF();
+				}
+				segment.starts = addStart(segment.starts, segment.decsAndStatements.size(), parser.t.pos);
+				if (in(FIRST_DECLARATION, kind)) {
+					segment.decsAndStatements.add(parser.declaration());
+				} else {
+					segment.decsAndStatements.add(parser.statement());
+				}
+				parser.match(SEMI);
+			}
+		} catch (SyntaxException e) {
+			segment.error = e;
+		}
+		return segment;
+	}
+
+	/**
+	 * Parses the input of the Scanner of this Parser, which is the input of
+	 * the Scanner of previous with the characters from offset to offset +
+	 * deleted replaced by inserted characters, for example a Scanner returned
+	 * by edit, reusing the declarations and statements of the Program last
+	 * parsed by previous.
+	 * 
+	 * Each declaration or statement is parsed from its first token up to its
+	 * SEMI, without looking at the tokens around it, so only the items that
+	 * contain the edit, or whose tokens were changed by it, are parsed again.
+	 * The items before the item containing offset are reused as they are.
+	 * Parsing starts at that item, and stops at the first item start after
+	 * the inserted characters where an item of previous starts too: the
+	 * input from there on is unchanged, and so are its tokens and items,
+	 * which are reused from previous.  The work per edit is proportional to
+	 * the size of the changed items, apart from copying the references to
+	 * the items and their positions.
+	 * 
+	 * The reused items are the nodes of the previous Program, which are not
+	 * changed, so their tokens are those of the Scanner they were parsed
+	 * from, with the positions, lines and columns of that input.  An edit
+	 * moves an item after it as a whole, so instead of rebuilding the tokens
+	 * of the item, its offset, the difference between its start in the input
+	 * of this Parser and the position of its first token, is applied when a
+	 * position is read, see locate and Pipeline.checkReparsed.  The
+	 * attributes set by a type check, such as type_attribute and the
+	 * declarations of identifiers, are kept until the Program is checked
+	 * again.  previous is not changed, and only the Scanners that the items
+	 * of the Program were parsed from stay reachable from it.
+	 * 
+	 * The whole input is parsed if the edit is not after the start of the
+	 * first item, or if either Parser is recovering.
+	 * 
+	 * Precondition: both Scanners have been scanned, and previous has parsed
+	 * a Program.
+	 * 
+	 * @throws SyntaxException
+	 *             as parse would
+	 */
+	Program reparse(Parser previous, int offset, int deleted, int inserted) throws SyntaxException {
+		List<ASTNode> items = previous.ast.decsAndStatements;
+		int[] previousStarts = previous.itemStarts;
+		int n = items.size();
+		// the item containing offset
+		int first = previousStarts == null ? -1 : searchStarts(previousStarts, 0, n, offset + 1) - 1;
+		if (first < 0 || errors != null) {
+			return parse();
+		}
+		Token firstToken = previous.ast.firstToken;
+		openDepth = 0;
+		enter("program", firstToken);
+		ArrayList<ASTNode> decsAndStatements = new ArrayList<ASTNode>(n + 16);
+		decsAndStatements.addAll(items.subList(0, first));
+		int[] starts = Arrays.copyOf(previousStarts, first + 16);
+		cursor = scanner.tokenIndex(previousStarts[first]);
+		t = scanner.tokenAt(cursor);
+		int end = offset + inserted;
+		int delta = inserted - deleted;
+		int next = first + 1; // the first item of previous that may be reused
+		while (in(FIRST_PROGRAM_ITEM, t.kind)) {
+			if (t.pos >= end) {
+				next = searchStarts(previousStarts, next, n, t.pos - delta);
+				if (next < n && previousStarts[next] == t.pos - delta
+						&& previous.scanner.kindAt(previous.scanner.tokenIndex(t.pos - delta)) == t.kind) {
+					int size = decsAndStatements.size();
+					decsAndStatements.addAll(items.subList(next, n));
+					starts = Arrays.copyOf(starts, decsAndStatements.size());
+					for (int i = next; i < n; i++) {
+						starts[size + i - next] = previousStarts[i] + delta;
+					}
+					cursor = scanner.size() - 1;
+					t = scanner.tokenAt(cursor);
+					break;
+				}
+			}
+			starts = addStart(starts, decsAndStatements.size(), t.pos);
+			if (in(FIRST_DECLARATION, t.kind)) {
 				decsAndStatements.add(declaration());
-			} else if (t.kind == Kind.IDENTIFIER) {
+			} else {
 				decsAndStatements.add(statement());
 			}
 			match(SEMI);
 		}
-		return new Program(firstToken, firstToken, decsAndStatements);
+		Program p = new Program(firstToken, firstToken, decsAndStatements);
+		exit("program", t);
+		matchEOF();
+		ast = p;
+		itemStarts = starts;
+		return p;
+	}
+
+	/**
+	 * Returns the token of the Scanner of this Parser at the position in its
+	 * input of token, a token of the declaration or statement with index item
+	 * in the Program last returned by parse or reparse, by applying the
+	 * offset of the item, see reparse.
+	 */
+	Token locate(int item, Token token) {
+		if (itemStarts == null) {
+			// a recovering Parser does not reuse items
+			return token;
+		}
+		int offset = itemStarts[item] - ast.decsAndStatements.get(item).firstToken.pos;
+		return scanner.tokenAt(scanner.tokenIndex(token.pos + offset));
+	}
+
+	/**
+	 * Returns starts with pos stored at index i, grown if necessary.
+	 */
+	private static int[] addStart(int[] starts, int i, int pos) {
+		if (i == starts.length) {
+			starts = Arrays.copyOf(starts, 2 * i);
+		}
+		starts[i] = pos;
+		return starts;
+	}
+
+	/**
+	 * Returns the index of the first of starts[from .. to - 1] that is at
+	 * least pos, or to if there is none.
+	 */
+	private static int searchStarts(int[] starts, int from, int to, int pos) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (starts[mid] < pos) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Parses the name and the declarations and statements of a program into
+	 * decsAndStatements for a recovering Parser, up to EOF.
+	 */
+	private void recoveringProgram(ArrayList<ASTNode> decsAndStatements) {
+		int depth = openDepth;
+		try {
+			match(IDENTIFIER);
+		} catch (SyntaxException e) {
+			record(e);
+		}
+		while (t.kind != EOF) {
+			Token firstToken = t;
+			int start = cursor;
+			ASTNode node;
+			try {
+				if (in(FIRST_DECLARATION, t.kind)) {
+					node = declaration();
+				} else if (in(FIRST_STATEMENT, t.kind)) {
+					node = statement();
+				} else {
+					// a stray token, reported as parse reports it
+					throw expectedEOL();
+				}
+				match(SEMI);
+			} catch (SyntaxException e) {
+				record(e);
+				closeRules(depth, e.t);
+				node = new ErrorNode(firstToken, e.t, e.getMessage());
+				synchronize(start);
+			}
+			emit(decsAndStatements, node);
+		}
+	}
+
+	/**
+	 * Adds e to the errors, unless the last error was found at the same
+	 * token, as it is when a bad program name is also a bad start of a
+	 * declaration or statement.
+	 */
+	private void record(SyntaxException e) {
+		if (errors.isEmpty() || errors.get(errors.size() - 1).t.pos != e.t.pos) {
+			errors.add(e);
+		}
+	}
+
+	/**
+	 * Skips tokens after a syntax error in the declaration or statement that
+	 * starts at index start, up to and including the next SEMI or up to the
+	 * next start of a declaration.  Skips at least one token, so that an
+	 * error at the first token of a declaration cannot be found again.
+	 */
+	private void synchronize(int start) {
+		if (cursor == start) {
+			skip();
+		}
+		while (t.kind != EOF && t.kind != SEMI && !in(FIRST_DECLARATION, t.kind)) {
+			skip();
+		}
+		if (t.kind == SEMI) {
+			skip();
+		}
+	}
+
+	private void skip() {
+		listener.consume(t);
+		t = scanner.tokenAt(++cursor);
 	}
 
 	Declaration declaration() throws SyntaxException {
+		enter("declaration", t);
 		Declaration decl_statement = null;
-		if (t.kind == Kind.KW_int || t.kind == Kind.KW_boolean) {
+		if (in(FIRST_VARIABLE_DECLARATION, t.kind)) {
 			decl_statement = variableDeclaration();
-		} else if (t.kind == Kind.KW_image) {
+		} else if (in(FIRST_IMAGE_DECLARATION, t.kind)) {
 			decl_statement = imageDeclaration();
-		} else if (t.kind == Kind.KW_url || t.kind == Kind.KW_file) {
+		} else if (in(FIRST_SOURCE_SINK_DECLARATION, t.kind)) {
 			decl_statement = sourceSinkDeclaration();
 		} else {
 			String message = "Expected start{Declaration} at " + t.line + ":" + t.pos_in_line;
 			throw new SyntaxException(t, message);
 		}
+		exit("declaration", t);
 		return decl_statement;
 	}
 
@@ -139,7 +759,7 @@ public class Parser {
 	Declaration_SourceSink sourceSinkDeclaration() throws SyntaxException {
 		Token firstToken = t;
 		Token type = null;
-		if (t.kind == Kind.KW_url || t.kind == Kind.KW_file) {
+		if (in(FIRST_SOURCE_SINK_DECLARATION, t.kind)) {
 			type = t;
 			sourceSinkType();
 		} else {
@@ -166,6 +786,7 @@ public class Parser {
 
 	Source source() throws SyntaxException {
 		Token firstToken = t;
+		enter("source", firstToken);
 		Source s = null;
 		if (t.kind == Kind.STRING_LITERAL) {
 			String fileOrUrl = t.getText();
@@ -183,20 +804,23 @@ public class Parser {
 			String message = "Expected start{source} at " + t.line + ":" + t.pos_in_line;
 			throw new SyntaxException(t, message);
 		}
+		exit("source", t);
 		return s;
 	}
 
 	Statement statement() throws SyntaxException {
 		Token firstToken = t;
+		enter("statement", firstToken);
 		Statement s = null;
 		match(IDENTIFIER);
 		if (t.kind == OP_RARROW) {
 			s = imageOutStatement(firstToken);
 		} else if (t.kind == OP_LARROW) {
 			s = imageInStatement(firstToken);
-		} else if (t.kind == Kind.LSQUARE || t.kind == Kind.OP_ASSIGN) {
+		} else if (in(FIRST_ASSIGNMENT_REST, t.kind)) {
 			s = assignmentStatement(firstToken);
 		}
+		exit("statement", t);
 		return s;
 	}
 
@@ -267,6 +891,7 @@ public class Parser {
 
 	Sink sink() throws SyntaxException {
 		Token firstToken = t;
+		enter("sink", firstToken);
 		Sink sink = null;
 		if (t.kind == IDENTIFIER) {
 			Token name = t;
@@ -278,6 +903,7 @@ public class Parser {
 		} else {
 			throw new SyntaxException(t, "Expected start{sink} but found:" + t.kind);
 		}
+		exit("sink", t);
 		return sink;
 	}
 
@@ -290,8 +916,8 @@ public class Parser {
 	}
 
 	void consume() throws SyntaxException {
-		System.out.println("Consumed the token:" + t);
-		t = scanner.nextToken();
+		listener.consume(t);
+		t = scanner.tokenAt(++cursor);
 	}
 
 	/**
@@ -304,8 +930,12 @@ public class Parser {
 	 * @throws SyntaxException
 	 */
 	Expression expression() throws SyntaxException {
+		if (explicitStack) {
+			return stackExpression();
+		}
 		Token firstToken = t;
-		Expression e0 = orExpression();
+		enter("expression", firstToken);
+		Expression e0 = binaryExpression(0);
 		if (t.kind == OP_Q) {
 			match(OP_Q);
 			Expression trueExpression = expression();
@@ -313,159 +943,90 @@ public class Parser {
 			Expression falseExpression = expression();
 			e0 = new Expression_Conditional(firstToken, e0, trueExpression, falseExpression);
 		}
+		exit("expression", t);
 		return e0;
 	}
 
-	Expression orExpression() throws SyntaxException {
-		Token firstToken = t;
-		Expression eb0 = andExpression();
-		while (t.kind == Kind.OP_OR) {
-			Token op = t;
-			match(OP_OR);
-			Expression eb1 = andExpression();
-			eb0 = new Expression_Binary(firstToken, eb0, op, eb1);
-		}
-		return eb0;
-	}
-
-	Expression andExpression() throws SyntaxException {
-		Token firstToken = t;
-		Expression eb0 = eqExpression();
-		while (t.kind == Kind.OP_AND) {
-			Token op = t;
-			match(OP_AND);
-			Expression eb1 = eqExpression();
-			eb0 = new Expression_Binary(firstToken, eb0, op, eb1);
-		}
-		return eb0;
-	}
-
-	Expression eqExpression() throws SyntaxException {
-		Token firstToken = t;
-		Expression eb0 = relExpression();
-		while (t.kind == Kind.OP_EQ || t.kind == Kind.OP_NEQ) {
-			Token op = t;
-			if (t.kind == Kind.OP_EQ) {
-
-				match(OP_EQ);
-			} else if (t.kind == Kind.OP_NEQ) {
-				match(OP_NEQ);
-			}
-			Expression eb1 = relExpression();
-			eb0 = new Expression_Binary(firstToken, eb0, op, eb1);
-		}
-		return eb0;
-	}
-
-	Expression relExpression() throws SyntaxException {
-		Token firstToken = t;
-		Expression eb0 = addExpression();
-		while (t.kind == Kind.OP_LT || t.kind == Kind.OP_GT || t.kind == Kind.OP_LE || t.kind == Kind.OP_GE) {
-			Token op = t;
-			if (t.kind == Kind.OP_LT) {
-				match(OP_LT);
-			} else if (t.kind == Kind.OP_GT) {
-				match(OP_GT);
-			} else if (t.kind == Kind.OP_LE) {
-				match(OP_LE);
-			} else if (t.kind == Kind.OP_GE) {
-				match(OP_GE);
-			}
-			Expression eb1 = addExpression();
-			eb0 = new Expression_Binary(firstToken, eb0, op, eb1);
-		}
-		return eb0;
-	}
-
-	Expression addExpression() throws SyntaxException {
-		Token firstToken = t;
-		Expression eb0 = multExpression();
-		while (t.kind == Kind.OP_PLUS || t.kind == Kind.OP_MINUS) {
-			Token op = t;
-			if (t.kind == Kind.OP_PLUS) {
-				match(OP_PLUS);
-			} else if (t.kind == Kind.OP_MINUS) {
-				match(OP_MINUS);
-			}
-			Expression eb1 = multExpression();
-			eb0 = new Expression_Binary(firstToken, eb0, op, eb1);
-		}
-		return eb0;
-	}
-
-	Expression multExpression() throws SyntaxException {
+	/**
+	 * OrExpression ::= AndExpression ( OP_OR AndExpression )*
+	 * 
+	 * and so on down to
+	 * 
+	 * MultExpression ::= UnaryExpression ( ( OP_TIMES | OP_DIV | OP_MOD )
+	 * UnaryExpression )*
+	 * 
+	 * parsed by precedence climbing rather than with a method per level: a
+	 * binary expression is a unary expression followed by operators that bind
+	 * more tightly than minPower, each with its right operand, which in turn
+	 * takes only operators that bind more tightly than its own operator. So
+	 * the operators of a level are left associative, and the Expression_Binary
+	 * nodes and their first tokens are the same as those of the grammar.
+	 * 
+	 * @param minPower
+	 *            0 for an OrExpression, see bindingPower
+	 * @throws SyntaxException
+	 */
+	Expression binaryExpression(int minPower) throws SyntaxException {
 		Token firstToken = t;
-
-		Expression eu0 = unaryExpression();
-		Expression e0 = eu0;
-		while (t.kind == Kind.OP_TIMES || t.kind == Kind.OP_DIV || t.kind == Kind.OP_MOD) {
+		Expression e0 = unaryExpression();
+		int power;
+		while ((power = bindingPower[t.kind.ordinal()]) > minPower) {
 			Token op = t;
-			if (t.kind == Kind.OP_TIMES) {
-				match(OP_TIMES);
-			} else if (t.kind == Kind.OP_DIV) {
-				match(OP_DIV);
-			} else if (t.kind == Kind.OP_MOD) {
-				match(OP_MOD);
-			}
-			Expression eu1 = unaryExpression();
-			e0 = new Expression_Binary(firstToken, e0, op, eu1);
+			consume();
+			Expression e1 = binaryExpression(power);
+			e0 = new Expression_Binary(firstToken, e0, op, e1);
 		}
 		return e0;
 	}
 
+	/**
+	 * UnaryExpression ::= OP_PLUS UnaryExpression | OP_MINUS UnaryExpression |
+	 * UnaryExpressionNotPlusMinus
+	 * 
+	 * UnaryExpressionNotPlusMinus ::= OP_EXCL UnaryExpression | Primary |
+	 * IdentOrPixelSelectorExpression | KW_x | KW_y | KW_r | KW_a | KW_X | KW_Y
+	 * | KW_Z | KW_A | KW_R | KW_DEF_X | KW_DEF_Y
+	 * 
+	 * Primary ::= INTEGER_LITERAL | LPAREN Expression RPAREN |
+	 * FunctionApplication | BOOLEAN_LITERAL
+	 * 
+	 * @throws SyntaxException
+	 */
 	Expression unaryExpression() throws SyntaxException {
 		Token firstToken = t;
-		if (t.kind == Kind.OP_PLUS) {
+		switch (t.kind) {
+		case OP_PLUS:
+		case OP_MINUS:
+		case OP_EXCL: {
 			Token op = t;
-			match(OP_PLUS);
-			Expression e = unaryExpression();
-			return new Expression_Unary(firstToken, op, e);
-
-		} else if (t.kind == Kind.OP_MINUS) {
-			Token op = t;
-			match(OP_MINUS);
+			consume();
 			Expression e = unaryExpression();
 			return new Expression_Unary(firstToken, op, e);
-		} else {
-			return unaryExpressionNotPlusMinus();
 		}
-	}
-
-	Expression unaryExpressionNotPlusMinus() throws SyntaxException {
-		Token firstToken = t;
-		if (unaryExpressionStartSet.contains(t.kind)) {
-			Kind kind = t.kind;
-			match(t.kind);
-			return new Expression_PredefinedName(firstToken, kind);
-		} else if (t.kind == Kind.OP_EXCL) {
-			Token op = t;
-			match(OP_EXCL);
-			Expression e = unaryExpression();
-			return new Expression_Unary(firstToken, op, e);
-		} else if (t.kind == Kind.IDENTIFIER) {
+		case IDENTIFIER:
 			return identOrPixelSelectorExpression();
-		} else {
-			return primary();
-		}
-	}
-
-	Expression primary() throws SyntaxException {
-		Token firstToken = t;
-		if (t.kind == INTEGER_LITERAL) {
+		case INTEGER_LITERAL: {
 			int value = t.intVal();
-			match(Kind.INTEGER_LITERAL);
+			consume();
 			return new Expression_IntLit(firstToken, value);
-		} else if (t.kind == BOOLEAN_LITERAL) {
-			String textValue = t.getText();
-			boolean value = textValue.equals("true") ? true : false;
-			match(Kind.BOOLEAN_LITERAL);
+		}
+		case BOOLEAN_LITERAL: {
+			boolean value = "true".contentEquals(t.text());
+			consume();
 			return new Expression_BooleanLit(firstToken, value);
-		} else if (t.kind == LPAREN) {
-			match(LPAREN);
+		}
+		case LPAREN: {
+			consume();
 			Expression e = expression();
 			match(RPAREN);
 			return e;
-		} else {
+		}
+		default:
+			if (in(FIRST_PREDEFINED_NAME, t.kind)) {
+				Kind kind = t.kind;
+				consume();
+				return new Expression_PredefinedName(firstToken, kind);
+			}
 			return functionApplication();
 		}
 	}
@@ -489,7 +1050,7 @@ public class Parser {
 	}
 
 	Kind functionName() throws SyntaxException {
-		if (functionNameSet.contains(t.kind)) {
+		if (in(FIRST_FUNCTION_NAME, t.kind)) {
 			Kind kind = t.kind;
 			match(t.kind);
 			return kind;
@@ -520,6 +1081,295 @@ public class Parser {
 		return new Index(firstToken, e0, e1);
 	}
 
+	/**
+	 * States of a Frame of the explicit stack parser.  Each is a point in
+	 * expression, binaryExpression or unaryExpression, or in a method they
+	 * call, where the recursive parser either starts or continues after the
+	 * call that returned the expression in result.
+	 */
+	private static final int EXPRESSION = 0, CONDITION = 1, TRUE_EXPRESSION = 2, FALSE_EXPRESSION = 3,
+			BINARY = 4, LEFT_OPERAND = 5, RIGHT_OPERAND = 6, UNARY = 7, UNARY_OPERAND = 8, PARENTHESIZED = 9,
+			FUNCTION_ARG = 10, SELECTOR_E0 = 11, SELECTOR_E1 = 12;
+
+	/**
+	 * The local variables of a call of the recursive parser.
+	 */
+	private static final class Frame {
+		int state;
+		Token firstToken;
+		/**
+		 * the operator of a binary or unary expression, or the first token
+		 * of a selector
+		 */
+		Token op;
+		/**
+		 * see binaryExpression
+		 */
+		int minPower;
+		/**
+		 * the left operand, the condition or the first expression of a
+		 * selector
+		 */
+		Expression e0;
+		Expression e1;
+		/**
+		 * the function of a function application, null for a pixel selector
+		 */
+		Kind function;
+	}
+
+	/**
+	 * Parses an Expression as expression does, with an explicit stack of
+	 * Frames instead of recursive calls.
+	 * 
+	 * @throws SyntaxException
+	 */
+	Expression stackExpression() throws SyntaxException {
+		int bottom = depth;
+		push(EXPRESSION);
+		Expression result = null;
+		try {
+			while (depth > bottom) {
+				Frame f = frames[depth - 1];
+				switch (f.state) {
+				case EXPRESSION:
+					f.firstToken = t;
+					enter("expression", t);
+					f.state = CONDITION;
+					push(BINARY).minPower = 0;
+					break;
+				case CONDITION:
+					if (t.kind == OP_Q) {
+						match(OP_Q);
+						f.e0 = result;
+						f.state = TRUE_EXPRESSION;
+						push(EXPRESSION);
+					} else {
+						exit("expression", t);
+						pop();
+					}
+					break;
+				case TRUE_EXPRESSION:
+					match(OP_COLON);
+					f.e1 = result;
+					f.state = FALSE_EXPRESSION;
+					push(EXPRESSION);
+					break;
+				case FALSE_EXPRESSION:
+					result = new Expression_Conditional(f.firstToken, f.e0, f.e1, result);
+					exit("expression", t);
+					pop();
+					break;
+				case BINARY:
+					f.firstToken = t;
+					f.state = LEFT_OPERAND;
+					push(UNARY);
+					break;
+				case LEFT_OPERAND:
+					operatorStep(f, result);
+					break;
+				case RIGHT_OPERAND:
+					result = new Expression_Binary(f.firstToken, f.e0, f.op, result);
+					operatorStep(f, result);
+					break;
+				case UNARY:
+					result = unaryStep(f);
+					break;
+				case UNARY_OPERAND:
+					result = new Expression_Unary(f.firstToken, f.op, result);
+					pop();
+					break;
+				case PARENTHESIZED:
+					match(RPAREN);
+					pop();
+					break;
+				case FUNCTION_ARG:
+					match(RPAREN);
+					result = new Expression_FunctionAppWithExprArg(f.firstToken, f.function, result);
+					pop();
+					break;
+				case SELECTOR_E0:
+					match(COMMA);
+					f.e0 = result;
+					f.state = SELECTOR_E1;
+					push(EXPRESSION);
+					break;
+				case SELECTOR_E1: {
+					Index index = new Index(f.op, f.e0, result);
+					match(RSQUARE);
+					if (f.function == null) {
+						result = new Expression_PixelSelector(f.firstToken, f.firstToken, index);
+					} else {
+						result = new Expression_FunctionAppWithIndexArg(f.firstToken, f.function, index);
+					}
+					pop();
+					break;
+				}
+				default:
+					throw new IllegalStateException("state " + f.state);
+				}
+			}
+		} finally {
+			// after an exception, drop the frames of this call
+			while (depth > bottom) {
+				pop();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Takes the first step of unaryExpression for the Frame f: returns an
+	 * operand without nested expressions and pops f, or consumes the tokens
+	 * up to the first nested expression and pushes a Frame for it.
+	 * 
+	 * @return the operand, or null if a Frame was pushed
+	 * @throws SyntaxException
+	 */
+	private Expression unaryStep(Frame f) throws SyntaxException {
+		Token firstToken = t;
+		f.firstToken = firstToken;
+		switch (t.kind) {
+		case OP_PLUS:
+		case OP_MINUS:
+		case OP_EXCL:
+			f.op = t;
+			consume();
+			f.state = UNARY_OPERAND;
+			push(UNARY);
+			return null;
+		case IDENTIFIER:
+			consume();
+			if (t.kind == LSQUARE) {
+				selectorStep(f, null);
+				return null;
+			}
+			pop();
+			return new Expression_Ident(firstToken, firstToken);
+		case INTEGER_LITERAL: {
+			int value = t.intVal();
+			consume();
+			pop();
+			return new Expression_IntLit(firstToken, value);
+		}
+		case BOOLEAN_LITERAL: {
+			boolean value = "true".contentEquals(t.text());
+			consume();
+			pop();
+			return new Expression_BooleanLit(firstToken, value);
+		}
+		case LPAREN:
+			consume();
+			f.state = PARENTHESIZED;
+			push(EXPRESSION);
+			return null;
+		default:
+			if (in(FIRST_PREDEFINED_NAME, t.kind)) {
+				Kind kind = t.kind;
+				consume();
+				pop();
+				return new Expression_PredefinedName(firstToken, kind);
+			}
+			Kind function = functionName();
+			if (t.kind == LPAREN) {
+				consume();
+				f.function = function;
+				f.state = FUNCTION_ARG;
+				push(EXPRESSION);
+			} else if (t.kind == LSQUARE) {
+				selectorStep(f, function);
+			} else {
+				throw new SyntaxException(t, "LPAREN or LPARAM expected but found:" + t);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Continues the binary expression of the Frame f after its operand e0:
+	 * consumes the next operator, if it binds more tightly than f.minPower,
+	 * and pushes a Frame for its right operand, or otherwise pops f.
+	 */
+	private void operatorStep(Frame f, Expression e0) throws SyntaxException {
+		int power = bindingPower[t.kind.ordinal()];
+		if (power > f.minPower) {
+			f.e0 = e0;
+			f.op = t;
+			consume();
+			f.state = RIGHT_OPERAND;
+			push(BINARY).minPower = power;
+		} else {
+			pop();
+		}
+	}
+
+	/**
+	 * Consumes the LSQUARE of a selector for the Frame f and pushes a Frame
+	 * for its first expression.
+	 */
+	private void selectorStep(Frame f, Kind function) throws SyntaxException {
+		match(LSQUARE);
+		f.function = function;
+		f.op = t;
+		f.state = SELECTOR_E0;
+		push(EXPRESSION);
+	}
+
+	private Frame push(int state) {
+		if (frames == null) {
+			frames = new Frame[16];
+		} else if (depth == frames.length) {
+			frames = Arrays.copyOf(frames, 2 * depth);
+		}
+		Frame f = frames[depth];
+		if (f == null) {
+			f = frames[depth] = new Frame();
+		}
+		depth++;
+		f.state = state;
+		return f;
+	}
+
+	private void pop() {
+		Frame f = frames[--depth];
+		f.firstToken = null;
+		f.op = null;
+		f.e0 = null;
+		f.e1 = null;
+		f.function = null;
+	}
+
+	/**
+	 * Reports to the listener that the Parser starts the given rule at token
+	 * first.
+	 */
+	private void enter(String rule, Token first) {
+		if (openDepth == openRules.length) {
+			openRules = Arrays.copyOf(openRules, 2 * openDepth);
+		}
+		openRules[openDepth++] = rule;
+		listener.enter(rule, first);
+	}
+
+	/**
+	 * Reports to the listener that the Parser has finished the given rule,
+	 * with the token after it.
+	 */
+	private void exit(String rule, Token next) {
+		openDepth--;
+		listener.exit(rule, next);
+	}
+
+	/**
+	 * Exits the rules that were left open by a SyntaxException, down to
+	 * depth, with the token at which the error was found.
+	 */
+	private void closeRules(int depth, Token next) {
+		while (openDepth > depth) {
+			exit(openRules[openDepth - 1], next);
+		}
+	}
+
 	/**
 	 * Only for check at end of program. Does not "consume" EOF so no attempt to
 	 * get nonexistent next Token.
@@ -531,7 +1381,15 @@ public class Parser {
 		if (t.kind == EOF) {
 			return t;
 		}
+		throw expectedEOL();
+	}
+
+	/**
+	 * Returns the SyntaxException for a token after the last declaration or
+	 * statement that cannot start another one.
+	 */
+	private SyntaxException expectedEOL() {
 		String message = "Expected EOL at " + t.line + ":" + t.pos_in_line;
-		throw new SyntaxException(t, message);
+		return new SyntaxException(t, message);
 	}
 }
@@ -0,0 +1,322 @@
+package cop5556fa17;
+
+import static cop5556fa17.ScannerBenchmark.measure;
+import static cop5556fa17.ScannerBenchmark.program;
+import static cop5556fa17.ScannerBenchmark.referenceProgram;
+
+import java.io.Writer;
+import java.util.concurrent.ForkJoinPool;
+
+import cop5556fa17.ScannerBenchmark.Task;
+import cop5556fa17.AST.Program;
+
+/**
+ * Benchmarks for the Parser and the front end built on it.
+ *
+ * These are plain programs rather than unit tests, run like those of
+ * ScannerBenchmark, for example
+ *
+ * java -Xmx2g -cp bin cop5556fa17.ParserBenchmark expressions 200000
+ *
+ * where the first argument names the benchmark and the second is the number
+ * of statements in the generated input program.
+ *
+ */
+public class ParserBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String benchmark = args.length > 0 ? args[0] : "expressions";
+		int statements = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		if (benchmark.equals("expressions")) {
+			expressions(statements);
+		} else if (benchmark.equals("recovery")) {
+			recovery(statements);
+		} else if (benchmark.equals("reparse")) {
+			reparse(statements);
+		} else if (benchmark.equals("parseParallel")) {
+			parseParallel(statements);
+		} else if (benchmark.equals("typeCheck")) {
+			typeCheck(statements);
+		} else if (benchmark.equals("pipeline")) {
+			pipeline(statements);
+		} else {
+			System.out.println("unknown benchmark " + benchmark);
+		}
+	}
+
+	/**
+	 * Returns a program of pixel assignments with long expressions that use
+	 * all the binary operators, unary operators, predefined names, pixel
+	 * selectors and function applications.
+	 */
+	static String pixelProgram(int statements) {
+		StringBuilder sb = new StringBuilder("pixels\n");
+		sb.append("image[256,256] g;\nimage[256,256] h;\nint k = 3;\n");
+		for (int i = 0; i < statements; i++) {
+			switch (i % 3) {
+			case 0:
+				sb.append("g[[x,y]] = (x * y + k) % 256 - h[x,y] / (1 + k) * DEF_X;\n");
+				break;
+			case 1:
+				sb.append("g[[r,A]] = r < k & a >= 4 | !(x == y) ? cart_x[r,a] + -h[y,x] : abs(x - y) * sin(a) % Z;\n");
+				break;
+			default:
+				sb.append("h[[x,y]] = g[x,y] + ").append(i % 100).append(" * k - (2 + 3) * (4 + 5) != 0 ? g[y,x] : 0;\n");
+				break;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns a program of assignments of nested expressions, like those of
+	 * our code generators: 16 nested conditional expressions, each with a
+	 * parenthesized operand and a function application, 48 levels in all.
+	 */
+	static String nestedProgram(int statements) {
+		StringBuilder sb = new StringBuilder("nested\nint k = 0;\n");
+		for (int i = 0; i < statements; i++) {
+			sb.append("k = ");
+			for (int level = 0; level < 16; level++) {
+				sb.append("k == ").append(level).append(" ? -(k + abs(");
+			}
+			sb.append('k');
+			for (int level = 0; level < 16; level++) {
+				sb.append(")) : ").append(i % 100);
+			}
+			sb.append(";\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Measures parsing an expression heavy program of pixel assignments and a
+	 * program of nested expressions, per token, without tracing, with a
+	 * ParseTracer that discards its output, and with the explicit stack.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void expressions(int statements) throws Exception {
+		final Scanner scanner = new Scanner(pixelProgram(statements)).scan();
+		measure("parse expressions", scanner.size(), new Task() {
+			public void run() throws Exception {
+				new Parser(scanner).parse();
+			}
+		});
+		final Writer discard = new Writer() {
+			public void write(char[] cbuf, int off, int len) {
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		};
+		measure("parse expressions, traced", scanner.size(), new Task() {
+			public void run() throws Exception {
+				ParseTracer tracer = new ParseTracer(discard);
+				new Parser(scanner).tracing(tracer).parse();
+				tracer.flush();
+			}
+		});
+		measure("parse expressions, stack", scanner.size(), new Task() {
+			public void run() throws Exception {
+				new Parser(scanner).explicitStack().parse();
+			}
+		});
+		final Scanner nested = new Scanner(nestedProgram(statements / 10)).scan();
+		measure("parse nested", nested.size(), new Task() {
+			public void run() throws Exception {
+				new Parser(nested).parse();
+			}
+		});
+		measure("parse nested, stack", nested.size(), new Task() {
+			public void run() throws Exception {
+				new Parser(nested).explicitStack().parse();
+			}
+		});
+	}
+
+	/**
+	 * Measures the time per token of parsing the generated program, with and
+	 * without recovery, and of a recovering parse of the program with a
+	 * syntax error in every statement.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void recovery(int statements) throws Exception {
+		String input = program(statements);
+		final Scanner valid = new Scanner(input).scan();
+		measure("parse", valid.size(), new Task() {
+			public void run() throws Exception {
+				new Parser(valid).parse();
+			}
+		});
+		measure("parse recovering", valid.size(), new Task() {
+			public void run() throws Exception {
+				new Parser(valid).recovering().parse();
+			}
+		});
+		final Scanner syntaxErrors = new Scanner(input.replace(";\n", " ) ;\n")).scan();
+		measure("parse recovering, errors", syntaxErrors.size(), new Task() {
+			public void run() throws Exception {
+				new Parser(syntaxErrors).recovering().parse();
+			}
+		});
+	}
+
+	/**
+	 * Measures the time of reparsing programs of statements / 100,
+	 * statements / 10 and statements statements after the edit of the edit
+	 * benchmark, against the time of parsing the edited program.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void reparse(int statements) throws Exception {
+		for (int n = Math.max(1, statements / 100); n <= statements; n *= 10) {
+			final String input = program(n);
+			final Parser previous = new Parser(new Scanner(input).scan());
+			previous.parse();
+			final int offset = input.indexOf(" * 3", input.length() / 2) + 1;
+			final Scanner edited = previous.scanner.edit(offset, 1, "+");
+			// many reparses per run, since one is too short to time
+			measure("reparse " + n, 1000, new Task() {
+				public void run() throws Exception {
+					for (int i = 0; i < 1000; i++) {
+						new Parser(edited).reparse(previous, offset, 1, 1);
+					}
+				}
+			});
+			measure("parse " + n, 1, new Task() {
+				public void run() throws Exception {
+					new Parser(edited).parse();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Measures the time per token of parsing the generated program with
+	 * parse, and with parseParallel on pools of 1, 2, 4 ... threads, up to the
+	 * number of processors.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void parseParallel(int statements) throws Exception {
+		final Scanner scanner = new Scanner(program(statements)).scan();
+		measure("parse", scanner.size(), new Task() {
+			public void run() throws Exception {
+				new Parser(scanner).parse();
+			}
+		});
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= processors; threads *= 2) {
+			final ForkJoinPool pool = new ForkJoinPool(threads);
+			measure("parseParallel " + threads, scanner.size(), new Task() {
+				public void run() throws Exception {
+					new Parser(scanner).parseParallel(pool, Parser.PARALLEL_SEGMENT_SIZE);
+				}
+			});
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Measures the time per identifier of type checking a program that refers
+	 * to a few variables, see ScannerBenchmark.symbols.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void typeCheck(int statements) throws Exception {
+		Scanner scanner = new Scanner(referenceProgram(statements)).scan();
+		int n = 0;
+		for (int i = 0; i < scanner.size(); i++) {
+			if (scanner.kindAt(i) == Scanner.Kind.IDENTIFIER) {
+				n++;
+			}
+		}
+		final Program program = new Parser(scanner).parse();
+		measure("typeCheck", n, new Task() {
+			public void run() throws Exception {
+				program.visit(new TypeCheckVisitor(), null);
+			}
+		});
+	}
+
+	/**
+	 * Returns a program of declarations that type checks, each using the
+	 * variable declared two lines before.
+	 */
+	static String declarationProgram(int statements) {
+		StringBuilder sb = new StringBuilder("decls\nint k0 = 1;\nboolean k1 = true;\n");
+		for (int i = 2; i < statements; i++) {
+			if (i % 2 == 0) {
+				sb.append("int k").append(i).append(" = k").append(i - 2).append(" * 3 % 1000 + (k0 - 7) / 2;\n");
+			} else {
+				sb.append("boolean k").append(i).append(" = k").append(i - 2).append(" & k").append(i - 1)
+						.append(" > 3 | !true;\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Measures the time per token of scanning, parsing and type checking the
+	 * generated program one phase after the other, and with Pipeline.check
+	 * and Pipeline.checkConcurrently, and the time to the first error of the
+	 * same program with an undeclared variable in its first statement.  The
+	 * bytes allocated by the type checker thread of checkConcurrently are not
+	 * counted.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void pipeline(int statements) throws Exception {
+		final String input = declarationProgram(statements);
+		final String error = input.replaceFirst("k0 = 1", "k0 = k");
+		int tokens = new Scanner(input).scan().size();
+		measure("scan, parse, check", tokens, new Task() {
+			public void run() throws Exception {
+				new Parser(new Scanner(input).scan()).parse().visit(new TypeCheckVisitor(), null);
+			}
+		});
+		measure("check", tokens, new Task() {
+			public void run() throws Exception {
+				Pipeline.check(new Parser(new Scanner(input)), new TypeCheckVisitor());
+			}
+		});
+		measure("checkConcurrently", tokens, new Task() {
+			public void run() throws Exception {
+				Pipeline.checkConcurrently(new Parser(new Scanner(input)), new TypeCheckVisitor(),
+						Pipeline.QUEUE_CAPACITY);
+			}
+		});
+		measure("first error, sequential", tokens, new Task() {
+			public void run() throws Exception {
+				try {
+					new Parser(new Scanner(error).scan()).parse().visit(new TypeCheckVisitor(), null);
+				} catch (TypeCheckVisitor.SemanticException e) {
+					return;
+				}
+				throw new IllegalStateException("no error");
+			}
+		});
+		measure("first error, check", tokens, new Task() {
+			public void run() throws Exception {
+				try {
+					Pipeline.check(new Parser(new Scanner(error)), new TypeCheckVisitor());
+				} catch (TypeCheckVisitor.SemanticException e) {
+					return;
+				}
+				throw new IllegalStateException("no error");
+			}
+		});
+	}
+
+}
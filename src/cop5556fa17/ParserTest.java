@@ -2,6 +2,9 @@ package cop5556fa17;
 
 import static org.junit.Assert.*;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -1224,4 +1227,498 @@ public class ParserTest {
 		assertEquals("b", ((Expression_Ident)(ebin2.e1)).name);
 
 	}
+
+	@Test
+	public void testStreamingScanner() throws LexicalException, SyntaxException {
+		String input = "prog image[512,256] img <- @ 0; int k = 1 + 2 * 3; img[[x,y]] = img[x,y] / k;\nimg -> SCREEN;";
+		show(input);
+		Program expected = new Parser(new Scanner(input).scan()).parse();
+		Program ast = new Parser(new Scanner(new StringReader(input))).parse();
+		show(ast);
+		assertEquals(expected.toString(), ast.toString());
+	}
+	@Test
+	public void testTracing() throws LexicalException, SyntaxException {
+		String input = "prog int k = 1 + a;\nk -> SCREEN;";
+		show(input);
+		StringWriter trace = new StringWriter();
+		ParseTracer tracer = new ParseTracer(trace);
+		Program ast = new Parser(new Scanner(input).scan()).tracing(tracer).parse();
+		tracer.flush();
+		show(trace);
+		assertEquals(new Parser(new Scanner(input).scan()).parse().toString(), ast.toString());
+		assertEquals("enter program 1:1\n"
+				+ "  consume IDENTIFIER 1:1 prog\n"
+				+ "  enter declaration 1:6\n"
+				+ "    consume KW_int 1:6 int\n"
+				+ "    consume IDENTIFIER 1:10 k\n"
+				+ "    consume OP_ASSIGN 1:12 =\n"
+				+ "    enter expression 1:14\n"
+				+ "      consume INTEGER_LITERAL 1:14 1\n"
+				+ "      consume OP_PLUS 1:16 +\n"
+				+ "      consume KW_a 1:18 a\n"
+				+ "    exit expression 1:19\n"
+				+ "  exit declaration 1:19\n"
+				+ "  consume SEMI 1:19 ;\n"
+				+ "  enter statement 2:1\n"
+				+ "    consume IDENTIFIER 2:1 k\n"
+				+ "    consume OP_RARROW 2:3 ->\n"
+				+ "    enter sink 2:6\n"
+				+ "      consume KW_SCREEN 2:6 SCREEN\n"
+				+ "    exit sink 2:12\n"
+				+ "  exit statement 2:12\n"
+				+ "  consume SEMI 2:12 ;\n"
+				+ "exit program 2:13\n", trace.toString());
+	}
+	/**
+	 * The FIRST sets hold exactly the kinds that start their rules.
+	 */
+	@Test
+	public void testFirstSets() {
+		for (Scanner.Kind kind : Scanner.Kind.values()) {
+			boolean declaration = kind == KW_int || kind == KW_boolean || kind == KW_image || kind == KW_url
+					|| kind == KW_file;
+			assertEquals(kind.name(), declaration, Parser.in(Parser.FIRST_DECLARATION, kind));
+			assertEquals(kind.name(), declaration || kind == IDENTIFIER, Parser.in(Parser.FIRST_PROGRAM_ITEM, kind));
+			assertEquals(kind.name(), kind == LSQUARE || kind == OP_ASSIGN,
+					Parser.in(Parser.FIRST_ASSIGNMENT_REST, kind));
+			assertEquals(kind.name(), kind.name().matches("KW_(abs|sin|cos|atan|cart_.|polar_.)"),
+					Parser.in(Parser.FIRST_FUNCTION_NAME, kind));
+			assertEquals(kind.name(), kind.name().matches("KW_([xyraXYZAR]|DEF_X|DEF_Y)"),
+					Parser.in(Parser.FIRST_PREDEFINED_NAME, kind));
+		}
+	}
+
+	/**
+	 * The explicit stack parser must give the same AST, exceptions and events
+	 * as the recursive one.
+	 */
+	@Test
+	public void testExplicitStack() throws LexicalException, SyntaxException {
+		String[] inputs = { "k", "1 + 2 * 3 - 4 / 5 % 6", "a | b & c == d != e < f > g <= h >= i",
+				"(1 + 2) * -(3 - !k) + +x", "k ? 1 : k ? 2 : 3", "(k ? k : k) ? (k) : ((k))",
+				"g[x, y] + g[g[1,2], k ? 1 : 2] * cart_x[r, a] - sin(cos(abs(k)))",
+				"polar_r[g[DEF_X - 1, DEF_Y], A] & true | false", "-k ? !true : +g[Z, R]",
+				"k +", "(k", "g[k]", "sin k", "k ? 1", ")", "k ? 1 : (2 ? 3 : )" };
+		for (String input : inputs) {
+			show(input);
+			StringWriter expectedTrace = new StringWriter();
+			ParseTracer tracer = new ParseTracer(expectedTrace);
+			Parser parser = new Parser(new Scanner(input).scan()).tracing(tracer);
+			String expected;
+			try {
+				expected = parser.expression().toString() + " next " + parser.t;
+			} catch (SyntaxException e) {
+				expected = e.getMessage() + " at " + e.t;
+			}
+			tracer.flush();
+			StringWriter trace = new StringWriter();
+			tracer = new ParseTracer(trace);
+			parser = new Parser(new Scanner(input).scan()).tracing(tracer).explicitStack();
+			String actual;
+			try {
+				actual = parser.expression().toString() + " next " + parser.t;
+			} catch (SyntaxException e) {
+				actual = e.getMessage() + " at " + e.t;
+			}
+			tracer.flush();
+			show(actual);
+			assertEquals(expected, actual);
+			assertEquals(expectedTrace.toString(), trace.toString());
+		}
+		String input = "prog image[512,256] img <- @ (0); int k = 1 + 2 * 3; img[[x,y]] = img[x,y] / k ? -k : sin(k);\nimg -> SCREEN;";
+		assertEquals(new Parser(new Scanner(input).scan()).parse().toString(),
+				new Parser(new Scanner(input).scan()).explicitStack().parse().toString());
+	}
+
+	static final int DEPTH = 100000;
+
+	static String repeat(String s, int n) {
+		StringBuilder sb = new StringBuilder(n * s.length());
+		for (int i = 0; i < n; i++) {
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testDeepParentheses() throws LexicalException, SyntaxException {
+		String input = repeat("(", DEPTH) + "k" + repeat(")", DEPTH) + " + 1";
+		Expression e = new Parser(new Scanner(input).scan()).explicitStack().expression();
+		Expression_Binary binary = (Expression_Binary) e;
+		assertEquals("k", ((Expression_Ident) binary.e0).name);
+		assertEquals(LPAREN, binary.firstToken.kind);
+	}
+
+	@Test
+	public void testDeepConditional() throws LexicalException, SyntaxException {
+		String input = repeat("k ? 1 : ", DEPTH) + "0";
+		Expression e = new Parser(new Scanner(input).scan()).explicitStack().expression();
+		for (int i = 0; i < DEPTH; i++) {
+			Expression_Conditional conditional = (Expression_Conditional) e;
+			assertEquals(8 * i, conditional.firstToken.pos);
+			assertEquals(1, ((Expression_IntLit) conditional.trueExpression).value);
+			e = conditional.falseExpression;
+		}
+		assertEquals(0, ((Expression_IntLit) e).value);
+	}
+
+	@Test
+	public void testDeepUnaryAndSelectors() throws LexicalException, SyntaxException {
+		String input = repeat("-sin(g[", DEPTH) + "k" + repeat(", 1])", DEPTH);
+		Expression e = new Parser(new Scanner(input).scan()).explicitStack().expression();
+		for (int i = 0; i < DEPTH; i++) {
+			Expression_Unary unary = (Expression_Unary) e;
+			assertEquals(OP_MINUS, unary.op);
+			Expression_FunctionAppWithExprArg sin = (Expression_FunctionAppWithExprArg) unary.e;
+			assertEquals(KW_sin, sin.function);
+			Expression_PixelSelector selector = (Expression_PixelSelector) sin.arg;
+			assertEquals("g", selector.name);
+			assertEquals(1, ((Expression_IntLit) selector.index.e1).value);
+			e = selector.index.e0;
+		}
+		assertEquals("k", ((Expression_Ident) e).name);
+	}
+	/**
+	 * parse(ItemConsumer) hands over each item, ErrorNodes included, in order
+	 * and before the next one is parsed, and stops at an exception of the
+	 * consumer.
+	 */
+	@Test
+	public void testParseConsumer() throws Exception {
+		String input = "prog int k = 1; k = k + 1; int = 2; k -> SCREEN; image i;";
+		final Scanner scanner = new Scanner(input);
+		final java.util.List<ASTNode> items = new java.util.ArrayList<>();
+		Program p = new Parser(scanner).recovering().parse(new ItemConsumer() {
+			public void accept(ASTNode item) throws Exception {
+				// only the token after the SEMI of item has been scanned
+				assertEquals(SEMI, scanner.kindAt(scanner.size() - 2));
+				items.add(item);
+			}
+		});
+		assertEquals(p.decsAndStatements, items);
+		assertEquals(5, items.size());
+		assertTrue(items.get(2) instanceof ErrorNode);
+		final IllegalArgumentException stop = new IllegalArgumentException();
+		Parser parser = new Parser(new Scanner(input));
+		try {
+			parser.parse(new ItemConsumer() {
+				public void accept(ASTNode item) throws Exception {
+					throw stop;
+				}
+			});
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertSame(stop, e);
+		}
+		// stopped after the first item
+		assertEquals(6, parser.cursor);
+	}
+
+	@Test
+	public void testRecovery() throws LexicalException, SyntaxException {
+		String input = "prog int k = ;\nk = 1 +;\nint j = k\nboolean b = true;\n5;\nimage[1,] i;\nk -> SCREEN;";
+		show(input);
+		Parser parser = new Parser(new Scanner(input).scan()).recovering();
+		Program ast = parser.parse();
+		show(ast);
+		show(parser.errors());
+		assertEquals("prog", ast.name);
+		assertEquals(7, ast.decsAndStatements.size());
+		int[] errorLines = { 1, 2, 4, 5, 6 };
+		assertEquals(errorLines.length, parser.errors().size());
+		for (int i = 0; i < errorLines.length; i++) {
+			assertEquals(errorLines[i], parser.errors().get(i).t.line);
+		}
+		// the stray 5 is reported as parse reports it
+		try {
+			new Parser(new Scanner("prog\n\n\n\n5;").scan()).parse();
+			fail();
+		} catch (SyntaxException e) {
+			assertEquals(e.getMessage(), parser.errors().get(3).getMessage());
+		}
+		// int j = k is not terminated, so the error is at boolean, where the
+		// parser synchronizes without skipping the declaration
+		assertEquals(ErrorNode.class, ast.decsAndStatements.get(2).getClass());
+		assertEquals(KW_boolean, ((ErrorNode) ast.decsAndStatements.get(2)).errorToken.kind);
+		assertEquals(Declaration_Variable.class, ast.decsAndStatements.get(3).getClass());
+		assertEquals(ErrorNode.class, ast.decsAndStatements.get(4).getClass());
+		assertEquals(ErrorNode.class, ast.decsAndStatements.get(5).getClass());
+		assertEquals(Statement_Out.class, ast.decsAndStatements.get(6).getClass());
+
+		// without errors, the same Program as without recovery
+		input = "prog image[512,256] img <- @ 0; int k = 1 + 2 * 3; img[[x,y]] = img[x,y] / k;\nimg -> SCREEN;";
+		parser = new Parser(new Scanner(input).scan()).recovering();
+		assertEquals(new Parser(new Scanner(input).scan()).parse().toString(), parser.parse().toString());
+		assertTrue(parser.errors().isEmpty());
+		assertTrue(new Parser(new Scanner(input).scan()).errors().isEmpty());
+	}
+
+	/**
+	 * A recovering Parser records one error per token, without a stack trace,
+	 * and exits the rules left open by an error, so a ParseTracer keeps its
+	 * indentation.
+	 */
+	@Test
+	public void testRecoveryErrors() throws LexicalException, SyntaxException {
+		// the bad name is also a bad start of a declaration or statement
+		Parser parser = new Parser(new Scanner("= 1; int k;").scan()).recovering();
+		Program ast = parser.parse();
+		assertEquals(1, parser.errors().size());
+		assertEquals(OP_ASSIGN, parser.errors().get(0).t.kind);
+		assertEquals(0, parser.errors().get(0).getStackTrace().length);
+		assertEquals(Declaration_Variable.class, ast.decsAndStatements.get(1).getClass());
+		try {
+			new Parser(new Scanner("= 1;").scan()).parse();
+			fail();
+		} catch (SyntaxException e) {
+			assertTrue(e.getStackTrace().length > 0);
+		}
+		String input = "prog int k = (sin[1 + ;\nk -> SCREEN;";
+		for (boolean explicitStack : new boolean[] { false, true }) {
+			StringWriter trace = new StringWriter();
+			ParseTracer tracer = new ParseTracer(trace);
+			parser = new Parser(new Scanner(input).scan()).recovering().tracing(tracer);
+			if (explicitStack) {
+				parser.explicitStack();
+			}
+			parser.parse();
+			tracer.flush();
+			show(trace);
+			String[] lines = trace.toString().split("\n");
+			assertEquals("  exit declaration 1:23", lines[lines.length - 11]);
+			assertEquals("  enter statement 2:1", lines[lines.length - 9]);
+			assertEquals("exit program 2:13", lines[lines.length - 1]);
+		}
+	}
+
+	/**
+	 * A recovering parse of random tokens ends, and each error is found at a
+	 * token after the previous one.
+	 */
+	@Test
+	public void testRandomRecovery() throws LexicalException, SyntaxException {
+		String[] words = { "int", "boolean", "image", "url", "file", "k", "=", ";", "1", "+", "(", ")", "[", "]",
+				",", "->", "<-", "SCREEN", "?", ":", "@", "x", "y", "sin" };
+		java.util.Random random = new java.util.Random(5556);
+		StringBuilder sb = new StringBuilder("prog\n");
+		for (int i = 0; i < 100000; i++) {
+			sb.append(words[random.nextInt(words.length)]).append(' ');
+		}
+		Parser parser = new Parser(new Scanner(sb.toString()).scan()).recovering();
+		Program ast = parser.parse();
+		assertTrue(parser.errors().size() > 1000);
+		int previous = -1;
+		for (SyntaxException e : parser.errors()) {
+			assertTrue(e.t.pos > previous);
+			previous = e.t.pos;
+		}
+		int errorNodes = 0;
+		for (ASTNode node : ast.decsAndStatements) {
+			if (node instanceof ErrorNode) {
+				errorNodes++;
+			}
+		}
+		assertEquals(parser.errors().size(), errorNodes);
+	}
+	@Test
+	public void testReparse() throws LexicalException, SyntaxException {
+		String input = "prog\nint k = 1;\nboolean b = k > 2;\nimage[4,4] g <- @ 0;\ng[[x,y]] = g[y,x] + k;\ng -> SCREEN;\n";
+		Scanner scanner = new Scanner(input).scan();
+		Parser parser = new Parser(scanner);
+		Program previous = parser.parse();
+		int offset = input.indexOf("k > 2") + 4;
+		Scanner edited = scanner.edit(offset, 1, "(3 * k)");
+		Program ast = new Parser(edited).reparse(parser, offset, 1, 7);
+		show(ast);
+		assertEquals(withoutPositions(new Parser(edited).parse().toString()), withoutPositions(ast.toString()));
+		assertEquals(5, ast.decsAndStatements.size());
+		assertSame(previous.decsAndStatements.get(0), ast.decsAndStatements.get(0));
+		assertNotSame(previous.decsAndStatements.get(1), ast.decsAndStatements.get(1));
+		for (int i = 2; i < 5; i++) {
+			assertSame(previous.decsAndStatements.get(i), ast.decsAndStatements.get(i));
+		}
+		// the reused items keep their tokens, which are moved when read
+		Parser parser2 = new Parser(edited);
+		parser2.reparse(parser, offset, 1, 7);
+		Program parsed = new Parser(edited).parse();
+		for (int i = 0; i < 5; i++) {
+			ASTNode item = ast.decsAndStatements.get(i);
+			assertEquals(parsed.decsAndStatements.get(i).firstToken, parser2.locate(i, item.firstToken));
+		}
+		assertEquals(new Parser(scanner).parse().toString(), previous.toString());
+	}
+
+	/**
+	 * A type check of a reparsed Program with Pipeline.checkReparsed reports
+	 * an error after the edit at its line and column in the edited input.
+	 */
+	@Test
+	public void testReparseTypeCheck() throws Exception {
+		String input = "prog\nint k = 1;\nboolean b = k > 2;\nint j = 3;\n  int m = b;\n";
+		Scanner scanner = new Scanner(input).scan();
+		Parser parser = new Parser(scanner);
+		parser.parse();
+		int offset = input.indexOf("k > 2") + 4;
+		Scanner edited = scanner.edit(offset, 1, "2;\nint i = 4;\nint h = 5");
+		Parser reparser = new Parser(edited);
+		Program ast = reparser.reparse(parser, offset, 1, 23);
+		assertEquals(6, ast.decsAndStatements.size());
+		try {
+			Pipeline.checkReparsed(reparser, new TypeCheckVisitor());
+			fail("expected SemanticException");
+		} catch (TypeCheckVisitor.SemanticException e) {
+			show(e);
+			assertTrue(e.getMessage(), e.getMessage().startsWith("line 7 pos 3:"));
+			assertEquals(edited.tokenAt(edited.tokenIndex(input.indexOf("int m") + 23 - 1)), e.t);
+		}
+	}
+
+	/**
+	 * reparse reuses a deeply nested expression after an edit, or parses it
+	 * again with an explicit stack, without walking it recursively.
+	 */
+	@Test
+	public void testReparseDeep() throws LexicalException, SyntaxException {
+		StringBuilder sb = new StringBuilder("p int k = 1; q = ");
+		for (int i = 0; i < 100000; i++) {
+			sb.append('-');
+		}
+		String input = sb.append("1;").toString();
+		Parser parser = new Parser(new Scanner(input).scan()).explicitStack();
+		Program previous = parser.parse();
+		// the nested statement is reused
+		int offset = input.indexOf('1');
+		Parser reparser = new Parser(parser.scanner.edit(offset, 1, "5")).explicitStack();
+		Program ast = reparser.reparse(parser, offset, 1, 1);
+		assertSame(previous.decsAndStatements.get(1), ast.decsAndStatements.get(1));
+		assertEquals(13, reparser.locate(1, previous.decsAndStatements.get(1).firstToken).pos);
+		// the nested statement is parsed again
+		offset = input.lastIndexOf('1');
+		ast = new Parser(reparser.scanner.edit(offset, 1, "5")).explicitStack().reparse(reparser, offset, 1, 1);
+		assertEquals(2, ast.decsAndStatements.size());
+		assertNotSame(previous.decsAndStatements.get(1), ast.decsAndStatements.get(1));
+	}
+
+	/**
+	 * Returns the given toString of an AST without the positions of the
+	 * tokens in it, which are those of the previous input in the items reused
+	 * by reparse.
+	 */
+	static String withoutPositions(String ast) {
+		return ast.replaceAll("\\[(\\w+),([^,\\]]*)(,\\d+){4}\\]", "[$1,$2]");
+	}
+
+	/**
+	 * Random edits of a program, each reparsed from the previous Program,
+	 * give the same Program, or the same SyntaxException, as parsing the
+	 * edited input.
+	 */
+	@Test
+	public void testRandomReparse() throws LexicalException, SyntaxException {
+		String[] fragments = { "int j = 2;", "k = k + 1;", "boolean b = k == 1 | false;", "g[[x,y]] = g[y,x] * k;",
+				"k", " ", "\n", ";", "+ 1", "(", ")", "// comment\n", "int", "image[4,4] g;", "g -> SCREEN;" };
+		java.util.Random random = new java.util.Random(5556);
+		StringBuilder sb = new StringBuilder("prog\nint k = 1;\nimage[4,4] g;\n");
+		for (int i = 0; i < 200; i++) {
+			sb.append(fragments[random.nextInt(4)]).append(random.nextBoolean() ? " " : "\n");
+		}
+		String input = sb.toString();
+		Parser previous = new Parser(new Scanner(input).scan());
+		previous.parse();
+		for (int i = 0; i < 1000; i++) {
+			int offset = random.nextInt(input.length() + 1);
+			int deleted = random.nextInt(Math.min(20, input.length() - offset) + 1);
+			String inserted = random.nextInt(4) == 0 ? "" : fragments[random.nextInt(fragments.length)];
+			String editedInput = input.substring(0, offset) + inserted + input.substring(offset + deleted);
+			Scanner edited = previous.scanner.edit(offset, deleted, inserted);
+			Program parsed = null;
+			String expected;
+			try {
+				parsed = new Parser(new Scanner(editedInput).scan()).parse();
+				expected = withoutPositions(parsed.toString());
+			} catch (SyntaxException e) {
+				expected = e.getMessage();
+			}
+			Parser parser = new Parser(edited);
+			Program ast = null;
+			String actual;
+			try {
+				ast = parser.reparse(previous, offset, deleted, inserted.length());
+				actual = withoutPositions(ast.toString());
+			} catch (SyntaxException e) {
+				actual = e.getMessage();
+			}
+			assertEquals(editedInput, expected, actual);
+			if (ast != null) {
+				for (int j = 0; j < ast.decsAndStatements.size(); j++) {
+					ASTNode item = ast.decsAndStatements.get(j);
+					if (item != null) {
+						assertEquals(editedInput, parsed.decsAndStatements.get(j).firstToken.toString(),
+								parser.locate(j, item.firstToken).toString());
+					}
+				}
+				// edit the edited program next
+				input = editedInput;
+				previous = parser;
+			}
+		}
+	}
+	/**
+	 * parseParallel gives the same Program as parse, or throws the same
+	 * SyntaxException, for segments of several sizes, on valid programs and
+	 * on programs with a few characters removed.
+	 */
+	@Test
+	public void testParseParallel() throws Exception {
+		String[] fragments = { "int j = 2;", "k = k + 1;", "boolean b = k == 1 | false;", "g[[x,y]] = g[y,x] * k;",
+				"image[4,4] h <- @ (k ? 1 : 2);", "g -> SCREEN;", "url u = \"http://a.b\";" };
+		java.util.Random random = new java.util.Random(5556);
+		StringBuilder sb = new StringBuilder("prog\nint k = 1;\nimage[4,4] g;\n");
+		for (int i = 0; i < 500; i++) {
+			sb.append(fragments[random.nextInt(fragments.length)]).append(random.nextBoolean() ? " " : "\n");
+		}
+		String valid = sb.toString();
+		java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+		try {
+			for (int i = 0; i < 100; i++) {
+				String input = valid;
+				if (i > 0) {
+					int offset = random.nextInt(input.length());
+					input = input.substring(0, offset) + input.substring(Math.min(input.length(), offset + 1 + random.nextInt(3)));
+				}
+				Scanner scanner;
+				try {
+					scanner = new Scanner(input).scan();
+				} catch (LexicalException e) {
+					continue;
+				}
+				String expected;
+				try {
+					expected = new Parser(scanner).parse().toString();
+				} catch (SyntaxException e) {
+					expected = e.getMessage() + " " + e.t;
+				}
+				for (int segmentSize : new int[] { 1, 7, 100 }) {
+					String actual;
+					try {
+						actual = new Parser(scanner).parseParallel(pool, segmentSize).toString();
+					} catch (SyntaxException e) {
+						actual = e.getMessage() + " " + e.t;
+					}
+					assertEquals(input, expected, actual);
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+		// a Program parsed in parallel can be reparsed
+		Parser parser = new Parser(new Scanner(valid).scan());
+		Program ast = parser.parseParallel(java.util.concurrent.ForkJoinPool.commonPool(), 50);
+		assertEquals(new Parser(parser.scanner).parse(), ast);
+		int offset = valid.indexOf("k + 1") + 4;
+		Program reparsed = new Parser(parser.scanner.edit(offset, 1, "2")).reparse(parser, offset, 1, 1);
+		assertEquals(withoutPositions(new Parser(new Scanner(valid.substring(0, offset) + "2" + valid.substring(offset + 1)).scan()).parse().toString()),
+				withoutPositions(reparsed.toString()));
+	}
 }
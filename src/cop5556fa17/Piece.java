@@ -0,0 +1,87 @@
+package cop5556fa17;
+
+/**
+ * A range of whole lines of the input of a Scanner returned by edit, with the
+ * tokens and line starts in it, held by the arrays of an earlier scan.
+ *
+ * The characters, tokens and line starts of a piece are stored in arrays that
+ * may be shared with other pieces and other Scanners, and are never changed.
+ * Their positions are stored positions, which are positions in the input of
+ * the scan that produced them, or, for a piece merged from two others, from
+ * its start: the index in chars of a stored position is the stored position
+ * minus charBase.  A piece does not know where it is in the input, see
+ * PieceTable, so the same piece is used at any position.
+ *
+ */
+final class Piece {
+
+	final char[] chars;
+
+	/**
+	 * stored position of chars[0]
+	 */
+	final int charBase;
+
+	final TokenBuffer tokens;
+
+	final LineIndex lines;
+
+	/**
+	 * Stored positions of the first character of the piece, which is the
+	 * start of a line, and of the character after it.
+	 */
+	final int start;
+	final int end;
+
+	/**
+	 * indices in tokens of the first token of the piece and of the token
+	 * after it
+	 */
+	final int firstToken;
+	final int endToken;
+
+	/**
+	 * indices in lines of the start of the piece and of the line start after
+	 * it
+	 */
+	final int firstLine;
+	final int endLine;
+
+	Piece(char[] chars, int charBase, TokenBuffer tokens, LineIndex lines, int start, int end) {
+		this.chars = chars;
+		this.charBase = charBase;
+		this.tokens = tokens;
+		this.lines = lines;
+		this.start = start;
+		this.end = end;
+		this.firstToken = tokens.search(start);
+		this.endToken = tokens.search(end);
+		this.firstLine = lines.indexOf(start);
+		this.endLine = lines.after(end - 1);
+		assert lines.starts[firstLine] == start;
+	}
+
+	/**
+	 * Returns the piece for the characters of this one from stored position
+	 * from to stored position to, both line starts.
+	 */
+	Piece slice(int from, int to) {
+		if (from == start && to == end) {
+			return this;
+		}
+		return new Piece(chars, charBase, tokens, lines, from, to);
+	}
+
+	int length() {
+		return end - start;
+	}
+
+	int tokenCount() {
+		return endToken - firstToken;
+	}
+
+	int lineCount() {
+		return endLine - firstLine;
+	}
+
+}
@@ -0,0 +1,245 @@
+package cop5556fa17;
+
+/**
+ * The input of a Scanner returned by edit, as a list of line aligned pieces
+ * in order of position, see Piece.
+ *
+ * An edit creates a new table from the table of the edited Scanner: the
+ * pieces before the changed lines, a piece holding the changed lines, and the
+ * pieces after them, whose positions and token and line indices are moved by
+ * the changes in length, number of tokens and number of lines.  The pieces
+ * themselves, and the arrays they refer to, are shared, so an edit copies the
+ * changed lines and a few ints per piece, but none of the unchanged input.
+ * Once there are more than MAX_PIECES pieces, the two neighbouring pieces
+ * with the fewest characters are copied into one.
+ *
+ * A table is not changed once it has been built.
+ *
+ */
+final class PieceTable {
+
+	/**
+	 * Number of pieces above which pieces are merged, which bounds the number
+	 * of ints copied by an edit
+	 */
+	static final int MAX_PIECES = 1024;
+
+	final Piece[] pieces;
+
+	/**
+	 * starts[k], tokenBases[k] and lineBases[k] are the position in the input
+	 * of the first character of pieces[k], and the indices in the input of
+	 * its first token and first line
+	 */
+	final int[] starts;
+	final int[] tokenBases;
+	final int[] lineBases;
+
+	/**
+	 * number of pieces
+	 */
+	int size;
+
+	/**
+	 * Creates a table with the single given piece.
+	 */
+	PieceTable(Piece piece) {
+		this(1);
+		add(piece, 0, 0, 0);
+	}
+
+	private PieceTable(int capacity) {
+		pieces = new Piece[capacity];
+		starts = new int[capacity];
+		tokenBases = new int[capacity];
+		lineBases = new int[capacity];
+	}
+
+	private void add(Piece piece, int start, int tokenBase, int lineBase) {
+		pieces[size] = piece;
+		starts[size] = start;
+		tokenBases[size] = tokenBase;
+		lineBases[size] = lineBase;
+		size++;
+	}
+
+	/**
+	 * Returns the table for the input of this one with the characters from
+	 * position start to position oldEnd, both line starts, replaced by the
+	 * changed piece, which holds delta more characters.
+	 */
+	PieceTable edit(int start, int oldEnd, int delta, Piece changed) {
+		PieceTable table = new PieceTable(size + 2);
+		// the pieces before the one holding start are kept as they are
+		int k = pieceAt(start);
+		System.arraycopy(pieces, 0, table.pieces, 0, k);
+		System.arraycopy(starts, 0, table.starts, 0, k);
+		System.arraycopy(tokenBases, 0, table.tokenBases, 0, k);
+		System.arraycopy(lineBases, 0, table.lineBases, 0, k);
+		table.size = k;
+		int tokenBase = tokenBases[k];
+		int lineBase = lineBases[k];
+		if (starts[k] < start) {
+			Piece piece = pieces[k].slice(pieces[k].start, pieces[k].start + start - starts[k]);
+			table.add(piece, starts[k], tokenBase, lineBase);
+			tokenBase += piece.tokenCount();
+			lineBase += piece.lineCount();
+		}
+		table.add(changed, start, tokenBase, lineBase);
+		tokenBase += changed.tokenCount();
+		lineBase += changed.lineCount();
+		if (oldEnd < length()) {
+			k = pieceAt(oldEnd);
+			if (starts[k] < oldEnd) {
+				Piece piece = pieces[k].slice(pieces[k].start + oldEnd - starts[k], pieces[k].end);
+				table.add(piece, oldEnd + delta, tokenBase, lineBase);
+				tokenBase += piece.tokenCount();
+				lineBase += piece.lineCount();
+				k++;
+			}
+			if (k < size) {
+				int tokenDelta = tokenBase - tokenBases[k];
+				int lineDelta = lineBase - lineBases[k];
+				for (; k < size; k++) {
+					table.add(pieces[k], starts[k] + delta, tokenBases[k] + tokenDelta, lineBases[k] + lineDelta);
+				}
+			}
+		}
+		while (table.size > MAX_PIECES) {
+			table.merge();
+		}
+		return table;
+	}
+
+	/**
+	 * Replaces the two neighbouring pieces with the fewest characters by one
+	 * piece with arrays of its own.
+	 */
+	private void merge() {
+		int k = 0;
+		for (int i = 1; i + 1 < size; i++) {
+			if (end(i + 1) - starts[i] < end(k + 1) - starts[k]) {
+				k = i;
+			}
+		}
+		Piece first = pieces[k];
+		Piece second = pieces[k + 1];
+		char[] chars = new char[first.length() + second.length()];
+		System.arraycopy(first.chars, first.start - first.charBase, chars, 0, first.length());
+		System.arraycopy(second.chars, second.start - second.charBase, chars, first.length(), second.length());
+		// stored positions of the merged piece are counted from its start
+		TokenBuffer tokens = new TokenBuffer(first.tokenCount() + second.tokenCount());
+		tokens.append(first.tokens, first.firstToken, first.endToken, -first.start);
+		tokens.append(second.tokens, second.firstToken, second.endToken, first.length() - second.start);
+		LineIndex lines = new LineIndex(0);
+		lines.append(first.lines, first.firstLine + 1, first.endLine, -first.start);
+		lines.append(second.lines, second.firstLine, second.endLine, first.length() - second.start);
+		pieces[k] = new Piece(chars, 0, tokens, lines, 0, chars.length);
+		size--;
+		System.arraycopy(pieces, k + 2, pieces, k + 1, size - k - 1);
+		System.arraycopy(starts, k + 2, starts, k + 1, size - k - 1);
+		System.arraycopy(tokenBases, k + 2, tokenBases, k + 1, size - k - 1);
+		System.arraycopy(lineBases, k + 2, lineBases, k + 1, size - k - 1);
+		pieces[size] = null;
+	}
+
+	/**
+	 * Returns the position after the last character of pieces[k].
+	 */
+	private int end(int k) {
+		return k + 1 < size ? starts[k + 1] : starts[k] + pieces[k].length();
+	}
+
+	/**
+	 * Returns the number of characters of the input, including the EOFchar.
+	 */
+	int length() {
+		return end(size - 1);
+	}
+
+	/**
+	 * Returns the number of tokens of the input.
+	 */
+	int tokenCount() {
+		return tokenBases[size - 1] + pieces[size - 1].tokenCount();
+	}
+
+	/**
+	 * Returns the index of the piece holding the character at position pos:
+	 * the first piece for a negative pos, the last for one after the input.
+	 */
+	int pieceAt(int pos) {
+		return search(starts, pos);
+	}
+
+	/**
+	 * Returns the index of the piece holding the token with the given index.
+	 * Pieces without tokens are skipped.
+	 */
+	int pieceOfToken(int index) {
+		return search(tokenBases, index);
+	}
+
+	/**
+	 * Returns the last k such that values[k] <= value, or 0 if there is none.
+	 */
+	private int search(int[] values, int value) {
+		int low = 0;
+		int high = size - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (values[mid] <= value) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the stored position in pieces[k] of position pos of the input.
+	 */
+	int stored(int k, int pos) {
+		return pos - starts[k] + pieces[k].start;
+	}
+
+	/**
+	 * Returns the index in the chars of its piece of the character at position
+	 * pos of the input.
+	 */
+	int index(int pos) {
+		int k = pieceAt(pos);
+		return stored(k, pos) - pieces[k].charBase;
+	}
+
+	char charAt(int pos) {
+		int k = pieceAt(pos);
+		return pieces[k].chars[stored(k, pos) - pieces[k].charBase];
+	}
+
+	/**
+	 * Copies the characters from position from to position to into dst,
+	 * starting at index begin.
+	 */
+	void getChars(int from, int to, char[] dst, int begin) {
+		for (int k = pieceAt(from); from < to; k++) {
+			int n = Math.min(to, end(k)) - from;
+			System.arraycopy(pieces[k].chars, stored(k, from) - pieces[k].charBase, dst, begin, n);
+			from += n;
+			begin += n;
+		}
+	}
+
+	/**
+	 * Returns the index of the first token at or after position pos, or the
+	 * number of tokens if there is none.
+	 */
+	int tokenIndex(int pos) {
+		int k = pieceAt(pos);
+		Piece piece = pieces[k];
+		int i = piece.tokens.search(stored(k, pos));
+		return tokenBases[k] + Math.min(Math.max(i, piece.firstToken), piece.endToken) - piece.firstToken;
+	}
+
+}
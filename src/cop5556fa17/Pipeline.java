@@ -0,0 +1,220 @@
+package cop5556fa17;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import cop5556fa17.AST.ASTNode;
+import cop5556fa17.AST.ErrorNode;
+import cop5556fa17.AST.Program;
+import cop5556fa17.TypeCheckVisitor.SemanticException;
+
+/**
+ * Scans, parses and type checks a program as a pipeline, checking each
+ * declaration and statement as soon as the Parser has produced it instead
+ * of after the whole Program has been built, see Parser.parse(ItemConsumer).
+ *
+ * check runs the phases interleaved on the calling thread, and
+ * checkConcurrently type checks on a second thread while the calling thread
+ * scans and parses, so that on a large input the time approaches that of
+ * the slowest phase rather than the sum of all of them.  Both report the
+ * first error in program order and stop there: a SemanticException in a
+ * declaration or statement is thrown without parsing the rest of the
+ * program, and a SyntaxException only once every item before it has been
+ * checked.  Parsing before type checking instead always reports the
+ * SyntaxException first.
+ *
+ * With a recovering Parser, the ErrorNodes of the items with syntax errors
+ * are not type checked: their errors are in the errors of the Parser, and
+ * the other items are checked.
+ *
+ * checkReparsed type checks a Program that has already been parsed, such as
+ * one returned by Parser.reparse, whose reused items keep the positions of
+ * the input they were parsed from: it reports a SemanticException at the
+ * position of its token in the edited input.
+ *
+ * The returned Program has been checked, so it must not be visited with
+ * the same TypeCheckVisitor again.
+ *
+ */
+final class Pipeline {
+
+	/**
+	 * Default number of items that the Parser may be ahead of the type
+	 * checker in checkConcurrently
+	 */
+	static final int QUEUE_CAPACITY = 1024;
+
+	/**
+	 * marks the end of the items in the queue of checkConcurrently
+	 */
+	private static final Object END = new Object();
+
+	private Pipeline() {
+	}
+
+	/**
+	 * Parses the program of parser, type checking each declaration and
+	 * statement with checker as soon as it is parsed.
+	 *
+	 * @param parser
+	 * @param checker
+	 * @return the checked Program
+	 * @throws Exception
+	 *             the first SyntaxException or SemanticException
+	 */
+	static Program check(Parser parser, final TypeCheckVisitor checker) throws Exception {
+		return parser.parse(new ItemConsumer() {
+			public void accept(ASTNode item) throws Exception {
+				if (!(item instanceof ErrorNode)) {
+					item.visit(checker, null);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Type checks the declarations and statements of the Program last
+	 * returned by parse or reparse of parser with checker, in order.
+	 *
+	 * @param parser
+	 * @param checker
+	 * @return the checked Program
+	 * @throws Exception
+	 *             the first SemanticException, at its position in the input
+	 *             of parser
+	 */
+	static Program checkReparsed(Parser parser, TypeCheckVisitor checker) throws Exception {
+		Program program = parser.lastProgram();
+		List<ASTNode> items = program.decsAndStatements;
+		for (int i = 0; i < items.size(); i++) {
+			ASTNode item = items.get(i);
+			if (!(item instanceof ErrorNode)) {
+				try {
+					item.visit(checker, null);
+				} catch (SemanticException e) {
+					throw e.at(parser.locate(i, e.t));
+				}
+			}
+		}
+		return program;
+	}
+
+	/**
+	 * Parses the program of parser on the calling thread and type checks its
+	 * declarations and statements with checker on a new thread, with the
+	 * Parser at most capacity items ahead.
+	 *
+	 * @param parser
+	 * @param checker
+	 * @param capacity
+	 * @return the checked Program
+	 * @throws Exception
+	 *             the first SyntaxException or SemanticException
+	 */
+	static Program checkConcurrently(Parser parser, TypeCheckVisitor checker, int capacity) throws Exception {
+		final Checker thread = new Checker(checker, capacity);
+		thread.start();
+		Program program = null;
+		Exception parseError = null;
+		try {
+			program = parser.parse(new ItemConsumer() {
+				public void accept(ASTNode item) throws Exception {
+					Exception error = thread.error;
+					if (error != null) {
+						// stops the parse at the first semantic error
+						throw error;
+					}
+					if (!(item instanceof ErrorNode)) {
+						thread.queue.put(item);
+					}
+				}
+			});
+		} catch (Exception e) {
+			parseError = e;
+		} finally {
+			putUninterruptibly(thread.queue, END);
+			joinUninterruptibly(thread);
+		}
+		// every item before the syntax error has been checked, so a semantic
+		// error found by the checker comes first in the program
+		if (thread.error != null) {
+			throw thread.error;
+		}
+		if (parseError != null) {
+			throw parseError;
+		}
+		return program;
+	}
+
+	/**
+	 * Thread that type checks the items of its queue up to END.  After the
+	 * first error it keeps taking items without checking them, so that the
+	 * Parser never blocks on a full queue.
+	 */
+	private static final class Checker extends Thread {
+
+		final TypeCheckVisitor checker;
+
+		final BlockingQueue<Object> queue;
+
+		volatile Exception error;
+
+		Checker(TypeCheckVisitor checker, int capacity) {
+			super("type checker");
+			setDaemon(true);
+			this.checker = checker;
+			this.queue = new ArrayBlockingQueue<>(capacity);
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (Object item; (item = queue.take()) != END;) {
+					if (error == null) {
+						try {
+							((ASTNode) item).visit(checker, null);
+						} catch (Exception e) {
+							error = e;
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				if (error == null) {
+					error = e;
+				}
+			}
+		}
+	}
+
+	private static void putUninterruptibly(BlockingQueue<Object> queue, Object item) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				queue.put(item);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void joinUninterruptibly(Thread thread) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				thread.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
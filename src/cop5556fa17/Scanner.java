@@ -13,11 +13,25 @@
 
 package cop5556fa17;
 
-
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class Scanner {
 
@@ -31,6 +45,15 @@ public class Scanner {
 			this.pos = pos;
 		}
 
+		/**
+		 * Creates an exception without a stack trace, for the errors recorded
+		 * by a recovering Scanner, which are never thrown.
+		 */
+		LexicalException(String message, int pos, boolean recorded) {
+			super(message, null, false, !recorded);
+			this.pos = pos;
+		}
+
 		public int getPos() { return pos; }
 
 	}
@@ -46,7 +69,8 @@ public class Scanner {
 		OP_EXCL/* ! */, OP_Q/* ? */, OP_COLON/* : */, OP_EQ/* == */, OP_NEQ/* != */, OP_GE/* >= */, OP_LE/* <= */, 
 		OP_AND/* & */, OP_OR/* | */, OP_PLUS/* + */, OP_MINUS/* - */, OP_TIMES/* * */, OP_DIV/* / */, OP_MOD/* % */, 
 		OP_POWER/* ** */, OP_AT/* @ */, OP_RARROW/* -> */, OP_LARROW/* <- */, LPAREN/* ( */, RPAREN/* ) */, 
-		LSQUARE/* [ */, RSQUARE/* ] */, SEMI/* ; */, COMMA/* , */, EOF;
+		LSQUARE/* [ */, RSQUARE/* ] */, SEMI/* ; */, COMMA/* , */, EOF,
+		ERROR/* invalid input skipped by a recovering Scanner */;
 	}
 
 	public static enum State{
@@ -63,7 +87,7 @@ public class Scanner {
 		kindMap.put("SCREEN", Kind.KW_SCREEN); kindMap.put("cart_x", Kind.KW_cart_x); kindMap.put("cart_y", Kind.KW_cart_y); kindMap.put("polar_a", Kind.KW_polar_a); 
 		kindMap.put("polar_r", Kind.KW_polar_r); kindMap.put("abs", Kind.KW_abs); kindMap.put("sin", Kind.KW_sin); kindMap.put("cos", Kind.KW_cos); kindMap.put("atan", Kind.KW_atan);
 		kindMap.put("log", Kind.KW_log); kindMap.put("image", Kind.KW_image); kindMap.put("int", Kind.KW_int); kindMap.put("boolean", Kind.KW_boolean); kindMap.put("url", Kind.KW_url);
-		kindMap.put("file", Kind.KW_file); kindMap.put("=", Kind.OP_ASSIGN); kindMap.put("=", Kind.OP_ASSIGN); kindMap.put(">", Kind.OP_GT); kindMap.put("<", Kind.OP_LT); kindMap.put("?", Kind.OP_Q);
+		kindMap.put("file", Kind.KW_file); kindMap.put("=", Kind.OP_ASSIGN); kindMap.put("=", Kind.OP_ASSIGN); kindMap.put(">", Kind.OP_GT); kindMap.put("<", Kind.OP_LT); kindMap.put("!", Kind.OP_EXCL); kindMap.put("?", Kind.OP_Q);
 		kindMap.put(":", Kind.OP_COLON); kindMap.put("==", Kind.OP_EQ); kindMap.put("!=", Kind.OP_NEQ); kindMap.put(">=", Kind.OP_GE); kindMap.put("<=", Kind.OP_LE); kindMap.put("&", Kind.OP_AND);
 		kindMap.put("|", Kind.OP_OR); kindMap.put("+", Kind.OP_PLUS); kindMap.put("-", Kind.OP_MINUS); kindMap.put("*", Kind.OP_TIMES); kindMap.put("/", Kind.OP_DIV); kindMap.put("%", Kind.OP_MOD);
 		kindMap.put("**", Kind.OP_POWER); kindMap.put("->", Kind.OP_RARROW); kindMap.put("<-", Kind.OP_LARROW); kindMap.put("@", Kind.OP_AT); kindMap.put("(", Kind.LPAREN); kindMap.put(")", Kind.RPAREN);
@@ -74,6 +98,136 @@ public class Scanner {
 				'A','B','C','D','E','F','G','H','I','J','K','L','M','N','O','P','Q','R','S','T','U','V','W','X','Y','Z',
 				'_','$','0','1','2','3','4','5','6','7','8','9'));
 	}
+	/**
+	 * Kinds of the single character operators and separators, indexed by
+	 * character.  Built from kindMap so that a token can be recognized without
+	 * creating a String.
+	 */
+	static final Kind[] operatorKinds = new Kind[128];
+
+	/**
+	 * Keywords and boolean literals, indexed by length and then by first
+	 * character.  Each entry lists the words with that length and first
+	 * character.  Built from kindMap.
+	 */
+	static final Keyword[][][] keywordTable;
+
+	static final class Keyword {
+		final char[] text;
+		final Kind kind;
+
+		Keyword(String text, Kind kind) {
+			this.text = text.toCharArray();
+			this.kind = kind;
+		}
+	}
+
+	static {
+		HashMap<String, Kind> words = new HashMap<>();
+		int maxLength = 0;
+		for (String text : kindMap.keySet()) {
+			if (Character.isJavaIdentifierStart(text.charAt(0))) {
+				words.put(text, kindMap.get(text));
+			} else if (text.length() == 1) {
+				operatorKinds[text.charAt(0)] = kindMap.get(text);
+			}
+		}
+		words.put("true", Kind.BOOLEAN_LITERAL);
+		words.put("false", Kind.BOOLEAN_LITERAL);
+		for (String text : words.keySet()) {
+			maxLength = Math.max(maxLength, text.length());
+		}
+		keywordTable = new Keyword[maxLength + 1][128][];
+		for (String text : words.keySet()) {
+			Keyword[] entry = keywordTable[text.length()][text.charAt(0)];
+			entry = entry == null ? new Keyword[1] : Arrays.copyOf(entry, entry.length + 1);
+			entry[entry.length - 1] = new Keyword(text, words.get(text));
+			keywordTable[text.length()][text.charAt(0)] = entry;
+		}
+	}
+
+	/**
+	 * Returns the Kind of the keyword or boolean literal in chars from start to
+	 * start + length, or null if these characters are an identifier.  Does not
+	 * allocate.
+	 * 
+	 * @param chars
+	 * @param start
+	 * @param length
+	 * @return
+	 */
+	static Kind keywordKind(char[] chars, int start, int length) {
+		if (length == 0 || length >= keywordTable.length || chars[start] >= 128) {
+			return null;
+		}
+		Keyword[] entry = keywordTable[length][chars[start]];
+		if (entry == null) {
+			return null;
+		}
+		candidates: for (Keyword keyword : entry) {
+			for (int i = 1; i < length; i++) {
+				if (keyword.text[i] != chars[start + i]) {
+					continue candidates;
+				}
+			}
+			return keyword.kind;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the position of the first \n, \r or EOFchar in chars from pos,
+	 * or end if there is none before end.  Used to skip the text of a comment.
+	 * 
+	 * These are the only characters below 14 that end a comment, so eight
+	 * characters at a time are tested together: ch - 14 is negative, and sets
+	 * the sign bit of the or of the differences, only if ch is below 14.  The
+	 * characters are then examined one by one only in a group with such a
+	 * character, which in a comment is usually the one that ends it.
+	 */
+	static int skipComment(char[] chars, int pos, int end) {
+		while (pos + 8 <= end
+				&& ((chars[pos] - 14) | (chars[pos + 1] - 14) | (chars[pos + 2] - 14) | (chars[pos + 3] - 14)
+						| (chars[pos + 4] - 14) | (chars[pos + 5] - 14) | (chars[pos + 6] - 14)
+						| (chars[pos + 7] - 14)) >= 0) {
+			pos += 8;
+		}
+		while (pos < end) {
+			char ch = chars[pos];
+			if (ch == '\n' || ch == '\r' || ch == EOFchar) {
+				break;
+			}
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * Returns the position of the first character in chars from pos that is
+	 * not a space, tab or form feed, or end if there is none before end.
+	 * 
+	 * Runs of spaces, as in indentation, are skipped eight characters at a
+	 * time: the xor of a space with ' ' is 0, so the or of the xors is 0 only
+	 * if all eight characters are spaces.
+	 */
+	static int skipBlanks(char[] chars, int pos, int end) {
+		while (pos < end) {
+			if (pos + 8 <= end
+					&& ((chars[pos] ^ ' ') | (chars[pos + 1] ^ ' ') | (chars[pos + 2] ^ ' ') | (chars[pos + 3] ^ ' ')
+							| (chars[pos + 4] ^ ' ') | (chars[pos + 5] ^ ' ') | (chars[pos + 6] ^ ' ')
+							| (chars[pos + 7] ^ ' ')) == 0) {
+				pos += 8;
+				continue;
+			}
+			char ch = chars[pos];
+			if (ch != ' ' && ch != '\t' && ch != '\f') {
+				break;
+			}
+			pos++;
+		}
+		return pos;
+	}
+
 	/** Class to represent Tokens. 
 	 * 
 	 * This is defined as a (non-static) inner class
@@ -92,20 +246,121 @@ public class Scanner {
 		public final int line;
 		public final int pos_in_line;
 
+		/**
+		 * The characters of this token as they appear in the input: the
+		 * canonical String from the symbol pool for an IDENTIFIER, or a copy
+		 * captured when the token is created by a streaming Scanner, which
+		 * does not keep the input after the token has been passed.  Null
+		 * otherwise.
+		 */
+		private final String text;
+
+		/**
+		 * id of an IDENTIFIER in the symbol pool of the Scanner, or value of an
+		 * INTEGER_LITERAL, 0 otherwise.  Only known for a token created by the
+		 * Scanner, see hasValue.
+		 */
+		private final int value;
+
+		/**
+		 * false for a token created with the public constructor, whose symbol
+		 * and intVal are computed from its text when they are asked for
+		 */
+		private final boolean hasValue;
+
+		/**
+		 * Creates a token of this Scanner, for example to compare with the
+		 * tokens it returns, without changing the Scanner: an IDENTIFIER is
+		 * not added to the symbol pool and an INTEGER_LITERAL is not parsed.
+		 */
 		public Token(Kind kind, int pos, int length, int line, int pos_in_line) {
+			this.kind = kind;
+			this.pos = pos;
+			this.length = length;
+			this.line = line;
+			this.pos_in_line = pos_in_line;
+			this.value = 0;
+			this.hasValue = false;
+			this.text = null;
+		}
+
+		Token(Kind kind, int pos, int length, int line, int pos_in_line, int value) {
 			super();
 			this.kind = kind;
 			this.pos = pos;
 			this.length = length;
 			this.line = line;
 			this.pos_in_line = pos_in_line;
+			this.value = kind == Kind.IDENTIFIER || kind == Kind.INTEGER_LITERAL ? value : 0;
+			this.hasValue = true;
+			if (kind == Kind.IDENTIFIER) {
+				this.text = symbols.name(value);
+			} else {
+				this.text = streaming && input == null ? String.copyValueOf(chars, offset(pos, length), length) : null;
+			}
+		}
+
+		/**
+		 * precondition:  This Token is an IDENTIFIER
+		 * 
+		 * @returns the id of the identifier in the symbol pool of the Scanner.
+		 *          All occurrences of an identifier have the same id, and their
+		 *          getText returns the same String.  -1 for a token created
+		 *          with the public constructor whose identifier the Scanner
+		 *          has not scanned.
+		 */
+		public int symbol() {
+			assert kind == Kind.IDENTIFIER;
+			return hasValue ? value : symbols.find(rawText());
 		}
 
 		public String getText() {
 			if (kind == Kind.STRING_LITERAL) {
-				return chars2String(chars, pos, length);
+				if (text == null && inWindow(pos, length)) {
+					return chars2String(charsAt(pos), offset(pos, length), length);
+				}
+				return chars2String(rawText().toCharArray(), 0, length);
+			}
+			else return rawText();
+		}
+
+		/**
+		 * Returns the text of this token without copying it, when possible.
+		 * 
+		 * This is the text returned by getText, as a view of the input held
+		 * by the Scanner, with the following exceptions.  An IDENTIFIER
+		 * returns its canonical String.  A Scanner that does not hold its
+		 * whole input in chars returns a String.  A STRING_LITERAL with escape
+		 * sequences is decoded into a String; one without is a view of the
+		 * characters between the quotes.
+		 * 
+		 * The returned CharSequence can be hashed, compared and appended to a
+		 * StringBuilder without creating a String, see TokenText.
+		 */
+		public CharSequence text() {
+			if (kind == Kind.IDENTIFIER || !holdsInput()) {
+				return getText();
+			}
+			char[] chars = charsAt(pos);
+			int index = offset(pos, length);
+			if (kind == Kind.STRING_LITERAL) {
+				if (hasEscape(chars, index + 1, length - 2)) {
+					return chars2String(chars, index, length);
+				}
+				return new TokenText(chars, index + 1, length - 2);
+			}
+			return new TokenText(chars, index, length);
+		}
+
+		/**
+		 * Returns the characters of this token exactly as they appear in the
+		 * input.
+		 */
+		private String rawText() {
+			if (text != null) {
+				return text;
 			}
-			else return String.copyValueOf(chars, pos, length);
+			return source(pos, length);
 		}
 
 		/**
@@ -121,6 +376,9 @@ public class Scanner {
 		 * @return
 		 */
 		private String chars2String(char[] chars, int pos, int length) {
+			if (!hasEscape(chars, pos + 1, length - 2)) {
+				return new String(chars, pos + 1, length - 2);
+			}
 			StringBuilder sb = new StringBuilder();
 			for (int i = pos + 1; i < pos + length - 1; ++i) {// omit initial and final "
 				char ch = chars[i];
@@ -163,6 +421,19 @@ public class Scanner {
 			return sb.toString();
 		}
 
+		/**
+		 * Returns true if any of the characters of chars from pos to pos +
+		 * length is a \
+		 */
+		private boolean hasEscape(char[] chars, int pos, int length) {
+			for (int i = pos; i < pos + length; i++) {
+				if (chars[i] == '\\') {
+					return true;
+				}
+			}
+			return false;
+		}
+
 		/**
 		 * precondition:  This Token is an INTEGER_LITERAL
 		 * 
@@ -170,11 +441,11 @@ public class Scanner {
 		 */
 		public int intVal() {
 			assert kind == Kind.INTEGER_LITERAL;
-			return Integer.valueOf(String.copyValueOf(chars, pos, length));
+			return hasValue ? value : Integer.parseInt(rawText());
 		}
 
 		public String toString() {
-			return "[" + kind + "," + String.copyValueOf(chars, pos, length)  + "," + pos + "," + length + "," + line + ","
+			return "[" + kind + "," + rawText()  + "," + pos + "," + length + "," + line + ","
 					+ pos_in_line + "]";
 		}
 
@@ -249,29 +520,399 @@ public class Scanner {
 	static final char EOFchar = 0;
 
 	/**
-	 * The list of tokens created by the scan method.
+	 * The tokens created by the scan method, stored as parallel int arrays.
+	 * Token objects are created on demand by tokenAt.  Empty for a Scanner
+	 * returned by edit, whose tokens are in its pieces.
+	 */
+	final TokenBuffer tokens;
+
+	/**
+	 * Positions of the starts of the lines scanned so far, from which tokenAt
+	 * computes the line and position in line of a token.  Empty for a Scanner
+	 * returned by edit.
+	 */
+	LineIndex lines;
+
+	/**
+	 * The distinct identifiers scanned so far.  The value of an IDENTIFIER in
+	 * tokens is its id in this pool.
+	 */
+	final SymbolPool symbols;
+
+	/**
+	 * An array of characters representing the input.  When the Scanner is
+	 * created from a String, these are the characters from the input string
+	 * plus and additional EOFchar at the end.
+	 * 
+	 * When the Scanner reads from a Reader, chars is a window on the input:
+	 * chars[i] is the character at position base + i, and only the first
+	 * limit elements are valid.  The window is refilled, and the characters
+	 * that are no longer needed are dropped, as scanning proceeds.  The EOFchar
+	 * is appended once the reader is exhausted.
+	 * 
+	 * A Scanner returned by edit keeps its input in its pieces, and chars is
+	 * empty.
+	 */
+	char[] chars;
+
+	/**
+	 * position in the input of chars[0]
+	 */
+	int base;
+
+	/**
+	 * number of valid characters in chars, or in the pieces of a Scanner
+	 * returned by edit
+	 */
+	int limit;
+
+	/**
+	 * The input of a Scanner returned by edit, as line aligned pieces of the
+	 * arrays of earlier scans, see edit.  Null otherwise.
 	 */
-	final ArrayList<Token> tokens;
+	private PieceTable pieces;
 
 	/**
-	 * An array of characters representing the input.  These are the characters
-	 * from the input string plus and additional EOFchar at the end.
+	 * Source of further input, or null if the remaining input is already in
+	 * chars.
 	 */
-	final char[] chars;  
+	private Reader reader;
 
+	/**
+	 * The whole input when it is available as ASCII bytes, for example from
+	 * a memory mapped file.  Used to re-read the text of tokens that are no
+	 * longer in the window.  Null otherwise.
+	 */
+	private final ByteBuffer input;
 
+	/**
+	 * True if this Scanner reads from a Reader.  A streaming Scanner produces
+	 * tokens as they are requested and only retains a bounded number of them,
+	 * see tokenAt.
+	 */
+	final boolean streaming;
 
+	/**
+	 * Initial size of the window used when reading from a Reader
+	 */
+	static final int WINDOW_SIZE = 4096;
+
+	/**
+	 * Default number of characters per chunk for scanParallel
+	 */
+	static final int PARALLEL_CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Number of tokens before the most recently requested one that a
+	 * streaming Scanner keeps available.
+	 */
+	static final int RETAINED_TOKENS = 16;
+
+	/**
+	 * State of the scan between calls to scanToken: window index of the next
+	 * character.
+	 */
+	private int scanPos = 0;
+
+	/**
+	 * highest token index requested from a streaming Scanner
+	 */
+	private int requested = 0;
 
 	/**
 	 * position of the next token to be returned by a call to nextToken
 	 */
 	private int nextTokenPos = 0;
 
+	/**
+	 * True if tokens are scanned by scanTokenWithTables rather than by the
+	 * hand written state machine in scanToken.
+	 */
+	private boolean tableDriven = false;
+
+	/**
+	 * The lexical errors found so far by a recovering Scanner, null if this
+	 * Scanner is not recovering.
+	 */
+	private List<LexicalException> errors = null;
+
+	/**
+	 * Number of symbols above which reset clears the symbol pool.  Below it,
+	 * the pool is kept, so identifiers that recur from one input to the next
+	 * keep their ids and Strings.
+	 */
+	static final int RESET_SYMBOL_LIMIT = 4096;
+
+	/**
+	 * True once reset has been called.  The token arrays of a reused Scanner
+	 * are not trimmed after a scan, so that they can hold the tokens of the
+	 * next input.
+	 */
+	private boolean reused = false;
+
+	/**
+	 * Scanners for the threads using forCurrentThread
+	 */
+	private static final ThreadLocal<Scanner> threadScanners = new ThreadLocal<Scanner>() {
+		@Override
+		protected Scanner initialValue() {
+			return new Scanner("");
+		}
+	};
+
 	Scanner(String inputString) {
 		int numChars = inputString.length();
-		this.chars = Arrays.copyOf(inputString.toCharArray(), numChars + 1); // input string terminated with null char
+		this.chars = new char[numChars + 1]; // input string terminated with null char
+		inputString.getChars(0, numChars, chars, 0);
+		chars[numChars] = EOFchar;
+		limit = chars.length;
+		input = null;
+		streaming = false;
+		tokens = new TokenBuffer();
+		lines = new LineIndex(0);
+		symbols = new SymbolPool();
+	}
+
+	/**
+	 * Creates a Scanner that reads its input from the given Reader.
+	 * 
+	 * Tokens are scanned as they are requested through tokenAt, nextToken or
+	 * peek, so a Parser can run while the input is still being read.  Memory
+	 * use depends on the size of the tokens near the one last requested, not
+	 * on the size of the input.  Calling scan reads the whole input.
+	 * 
+	 * The reader is not closed by the Scanner.
+	 * 
+	 * @param reader
+	 */
+	Scanner(Reader reader) {
+		this(reader, null, true);
+	}
+
+	/**
+	 * Creates a Scanner for the ASCII source file with the given path.
+	 * 
+	 * The file is memory mapped and its bytes are widened directly into the
+	 * window of a streaming Scanner, so the input is neither decoded into a
+	 * String nor copied into a char array of its full size.  The text of
+	 * tokens that have left the window is re-read from the mapped file.
+	 * 
+	 * @param path
+	 * @throws IOException
+	 */
+	Scanner(Path path) throws IOException {
+		this(map(path));
+	}
+
+	/**
+	 * Creates a streaming Scanner over a buffer of ASCII bytes, whose
+	 * position must be 0.
+	 */
+	Scanner(ByteBuffer input) {
+		this(new ByteBufferReader(input), input, true);
+	}
+
+	/**
+	 * Creates a Scanner for input given as ISO-8859-1 bytes, such as the
+	 * contents of an ASCII source file.
+	 * 
+	 * The Scanner keeps the input as bytes, which take half the space of the
+	 * chars of a Scanner created from a String, and scans it through a small
+	 * window of chars, as a streaming Scanner does.  It produces the same
+	 * tokens as a Scanner created from the equivalent String and, unlike a
+	 * streaming Scanner, retains all of them.  The text of a token is read
+	 * from the bytes.  Bytes outside the ASCII range, which are only valid
+	 * in string literals and comments, are read as ISO-8859-1 characters.
+	 * 
+	 * Such a Scanner cannot be edited, and scanParallel scans it with scan.
+	 * 
+	 * @param input
+	 */
+	Scanner(byte[] input) {
+		this(new ByteBufferReader(ByteBuffer.wrap(input)), ByteBuffer.wrap(input), false);
+	}
+
+	private Scanner(Reader reader, ByteBuffer input, boolean streaming) {
+		this.reader = reader;
+		this.input = input;
+		this.chars = new char[WINDOW_SIZE];
+		limit = 0;
+		this.streaming = streaming;
+		tokens = new TokenBuffer();
+		lines = new LineIndex(0);
+		symbols = new SymbolPool();
+	}
+
+	/**
+	 * Switches this Scanner to the table driven lexer, which looks up the
+	 * class of each character and the transition on it in the tables of
+	 * LexerTables instead of testing the character against each case in turn.
+	 * Both lexers produce the same tokens and report the same errors.
+	 * 
+	 * Must be called before any tokens are scanned.
+	 * 
+	 * @return this Scanner
+	 */
+	Scanner tableDriven() {
+		assert size() == 0;
+		tableDriven = true;
+		return this;
+	}
+
+	/**
+	 * Makes this Scanner recover from lexical errors instead of throwing a
+	 * LexicalException on the first one, so that all the errors of an input
+	 * are found in one scan.  Each error is recorded, see errors, and the
+	 * invalid input is covered by an ERROR token:
+	 * 
+	 * an invalid character, or an EOFchar before the end of the input, is
+	 * skipped as a one character ERROR token;
+	 * 
+	 * a string literal with an invalid escape sequence is scanned to its end
+	 * and becomes an ERROR token;
+	 * 
+	 * a string literal that is not terminated on its line is an ERROR token
+	 * up to the line terminator, which is scanned as usual;
+	 * 
+	 * an integer literal that is too large is an ERROR token.
+	 * 
+	 * The work per error is constant, so recovering scans stay linear.
+	 * Must be called before any tokens are scanned.
+	 * 
+	 * @return this Scanner
+	 */
+	Scanner recovering() {
+		assert size() == 0;
+		errors = new ArrayList<>();
+		return this;
+	}
+
+	/**
+	 * Returns the lexical errors found so far by a recovering Scanner, in
+	 * order of position.  Empty for a Scanner that is not recovering.
+	 */
+	public List<LexicalException> errors() {
+		return errors == null ? Collections.<LexicalException> emptyList() : Collections.unmodifiableList(errors);
+	}
+
+	/**
+	 * Reports a lexical error at pos: throws it, unless this Scanner is
+	 * recovering, in which case it is recorded and the caller continues.
+	 */
+	private void error(String message, int pos) throws LexicalException {
+		if (errors == null) {
+			throw new LexicalException(message, pos);
+		}
+		errors.add(new LexicalException(message, pos, true));
+	}
+
+	/**
+	 * Makes this Scanner scan the given input, as if it had been created from
+	 * it, in the hand written mode.  The arrays holding the input, tokens and
+	 * line starts are kept and only grown when the input needs more room, so
+	 * scanning a small input with a reused Scanner allocates close to
+	 * nothing.  The symbol pool is kept too, unless it holds more than
+	 * RESET_SYMBOL_LIMIT symbols.
+	 * 
+	 * Tokens created from the previous input refer to this Scanner, so they,
+	 * and the ASTs holding them, must not be used after the reset.  Nor must
+	 * the Scanners returned by edit, which share the arrays of this Scanner.
+	 * 
+	 * Only a Scanner created from a String can be reset.
+	 * 
+	 * @param input
+	 * @return this Scanner
+	 */
+	public Scanner reset(CharSequence input) {
+		if (!holdsInput()) {
+			throw new IllegalStateException("Only a Scanner created from a String can be reset");
+		}
+		int numChars = input.length();
+		if (chars.length < numChars + 1) {
+			chars = new char[Math.max(numChars + 1, 2 * chars.length)];
+		}
+		if (input instanceof String) {
+			((String) input).getChars(0, numChars, chars, 0);
+		} else {
+			for (int i = 0; i < numChars; i++) {
+				chars[i] = input.charAt(i);
+			}
+		}
 		chars[numChars] = EOFchar;
-		tokens = new ArrayList<Token>();
+		limit = numChars + 1;
+		pieces = null;
+		scanPos = 0;
+		requested = 0;
+		nextTokenPos = 0;
+		tableDriven = false;
+		errors = null;
+		reused = true;
+		tokens.clear();
+		lines.clear(0);
+		if (symbols.size() > RESET_SYMBOL_LIMIT) {
+			symbols.clear();
+		}
+		return this;
+	}
+
+	/**
+	 * Returns a Scanner for the given input that is confined to the current
+	 * thread and reused, see reset, by the next call on this thread.  Meant
+	 * for services that compile many small programs on a few threads: the
+	 * Scanner, and the AST built from it, must not be used after the next
+	 * call, nor passed to another thread.
+	 * 
+	 * @param input
+	 * @return
+	 */
+	static Scanner forCurrentThread(CharSequence input) {
+		return threadScanners.get().reset(input);
+	}
+
+	/**
+	 * Creates a Scanner for the characters from start to end of chars, whose
+	 * first character is at position base.  Used by scanParallel to scan one
+	 * chunk of the chars of a Scanner created from a String, and by edit to
+	 * scan the changed lines.  Positions of tokens, lines and errors are
+	 * positions in the whole input.
+	 */
+	private Scanner(char[] chars, int base, int start, int end, boolean tableDriven, SymbolPool symbols) {
+		this.chars = chars;
+		this.base = base;
+		this.limit = end;
+		this.scanPos = start;
+		this.tableDriven = tableDriven;
+		input = null;
+		streaming = false;
+		tokens = new TokenBuffer();
+		lines = new LineIndex(base + start);
+		this.symbols = symbols;
+	}
+
+	/**
+	 * Creates a scanned Scanner for the input made of the given pieces.  Used
+	 * by edit.
+	 */
+	private Scanner(PieceTable pieces, boolean tableDriven, SymbolPool symbols) {
+		this.pieces = pieces;
+		this.chars = new char[0];
+		this.limit = pieces.length();
+		this.scanPos = limit;
+		this.tableDriven = tableDriven;
+		input = null;
+		streaming = false;
+		tokens = new TokenBuffer(0);
+		lines = new LineIndex(0);
+		this.symbols = symbols;
+	}
+
+	private static MappedByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() >= Integer.MAX_VALUE) {
+				throw new IOException(path + " is too large to scan");
+			}
+			return channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
 	}
 
 
@@ -284,14 +925,274 @@ public class Scanner {
 	 * @throws LexicalException
 	 */
 	public Scanner scan() throws LexicalException {
-		/* TODO  Replace this with a correct and complete implementation!!! */
-		int pos = 0;
-		int line = 1;
-		int posInLine = 1;
-		int startPos=0;
+		try {
+			while (!atEnd()) {
+				scanToken();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (!reused) {
+			tokens.trimToSize();
+		}
+		return this;
+	}
+
+	/**
+	 * Scans the input in chunks of about PARALLEL_CHUNK_SIZE characters on
+	 * the common ForkJoinPool.  See scanParallel(ForkJoinPool, int).
+	 * 
+	 * @return
+	 * @throws LexicalException
+	 */
+	public Scanner scanParallel() throws LexicalException {
+		return scanParallel(ForkJoinPool.commonPool(), PARALLEL_CHUNK_SIZE);
+	}
+
+	/**
+	 * Like scan, but splits the input into chunks of about chunkSize
+	 * characters and scans the chunks in parallel on the given pool.  The
+	 * tokens, and the error reported for an invalid input, are the same as
+	 * those of scan.
+	 * 
+	 * No token, comment or string literal extends over a line terminator, so
+	 * the scan is in the START state at the start of every line.  Each chunk
+	 * therefore starts at the start of a line, and is scanned from the START
+	 * state.  The tokens and line starts of the chunks are then appended in
+	 * order.
+	 * 
+	 * A Scanner that does not hold its whole input in chars is scanned with
+	 * scan.  Must be called before any tokens are scanned.
+	 * 
+	 * @param pool
+	 * @param chunkSize
+	 * @return
+	 * @throws LexicalException
+	 *             the error in the first chunk with an error
+	 */
+	public Scanner scanParallel(ForkJoinPool pool, int chunkSize) throws LexicalException {
+		assert size() == 0;
+		if (!holdsInput() || errors != null || limit <= chunkSize) {
+			return scan();
+		}
+		// each task returns its scanned chunk, or the LexicalException in it
+		List<Callable<Object>> chunks = new ArrayList<>();
+		int start = 0;
+		while (start < limit) {
+			final Scanner chunk = new Scanner(chars, 0, start, chunkEnd(start + chunkSize), tableDriven, new SymbolPool());
+			chunks.add(new Callable<Object>() {
+				public Object call() {
+					try {
+						return chunk.scan();
+					} catch (LexicalException e) {
+						return e;
+					}
+				}
+			});
+			start = chunk.limit;
+		}
+		List<Future<Object>> results = pool.invokeAll(chunks);
+		List<Scanner> scanned = new ArrayList<>();
+		int size = 0;
+		for (Future<Object> result : results) {
+			Object value;
+			try {
+				value = result.get();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+			if (value instanceof LexicalException) {
+				throw (LexicalException) value;
+			}
+			Scanner chunk = (Scanner) value;
+			scanned.add(chunk);
+			size += chunk.tokens.size;
+		}
+		tokens.ensureCapacity(size);
+		for (Scanner chunk : scanned) {
+			int from = tokens.size;
+			tokens.append(chunk.tokens, 0, chunk.tokens.size, 0);
+			// replace the ids in the symbol pool of the chunk by ids in this one
+			int[] ids = new int[chunk.symbols.size()];
+			for (int id = 0; id < ids.length; id++) {
+				ids[id] = symbols.intern(chunk.symbols.name(id));
+			}
+			for (int i = from; i < tokens.size; i++) {
+				if (tokens.kinds[i] == Kind.IDENTIFIER.ordinal()) {
+					tokens.values[i] = ids[tokens.values[i]];
+				}
+			}
+			// the first line of a chunk was added by the chunk before
+			lines.append(chunk.lines, 1, chunk.lines.size, 0);
+		}
+		scanPos = limit;
+		return this;
+	}
+
+	/**
+	 * Returns the position of the start of the first line that starts at or
+	 * after pos, or limit if there is none.  A \r\n pair is never split.
+	 * 
+	 * Precondition: this Scanner holds its whole input.
+	 */
+	private int chunkEnd(int pos) {
+		for (int i = Math.max(pos, 1); i < limit; i++) {
+			char previous = charAt(i - 1);
+			if (previous == '\n' || previous == '\r' && charAt(i) != '\n') {
+				return i;
+			}
+		}
+		return limit;
+	}
+
+	/**
+	 * Returns a Scanner for the input of this Scanner with the characters
+	 * from offset to offset + deleted replaced by inserted.  The returned
+	 * Scanner has been scanned, and has the same tokens as a Scanner created
+	 * from the edited input and scanned with scan.  This Scanner is not
+	 * changed, and can still be used and edited.
+	 * 
+	 * If this Scanner has been scanned, only the lines changed by the edit are
+	 * scanned again.  Since no token extends over a line terminator, scanning
+	 * starts in the START state at the start of the line containing offset,
+	 * and stops at the first line start after the inserted characters, from
+	 * where the edited input is the same as the old input.  Otherwise, the
+	 * whole edited input is scanned.
+	 * 
+	 * The unchanged lines are not copied: the input of the returned Scanner
+	 * is a PieceTable, whose pieces refer to the characters, tokens and line
+	 * starts of the scans that produced them.  The time of an edit depends
+	 * on the length of the changed lines and on the number of pieces, which
+	 * is at most PieceTable.MAX_PIECES, but not on the length of the input.
+	 * 
+	 * The returned Scanner shares the symbol pool of this Scanner, so an
+	 * identifier has the same id before and after the edit.
+	 * 
+	 * Only a Scanner created from a String, or returned by edit, can be
+	 * edited.
+	 * 
+	 * @param offset
+	 * @param deleted
+	 * @param inserted
+	 * @return
+	 * @throws LexicalException
+	 *             if the edited input is not valid
+	 */
+	public Scanner edit(int offset, int deleted, String inserted) throws LexicalException {
+		if (!holdsInput()) {
+			throw new IllegalStateException("Only a Scanner created from a String can be edited");
+		}
+		if (offset < 0 || deleted < 0 || offset + deleted > limit - 1) {
+			throw new IndexOutOfBoundsException("Offset: " + offset + ", Deleted: " + deleted + ", Length: " + (limit - 1));
+		}
+		int delta = inserted.length() - deleted;
+		if (!atEnd() || tokens.first != 0 || errors != null) {
+			char[] edited = new char[limit + delta];
+			getChars(0, offset, edited, 0);
+			inserted.getChars(0, inserted.length(), edited, offset);
+			getChars(offset + deleted, limit, edited, offset + inserted.length());
+			Scanner result = new Scanner(edited, 0, 0, edited.length, tableDriven, symbols);
+			if (errors != null) {
+				result.errors = new ArrayList<>();
+			}
+			return result.scan();
+		}
+
+		// start of the line containing offset.  A \r before offset may form a \r\n with the edit.
+		int start = offset;
+		if (start > 0 && charAt(start - 1) == '\r') {
+			start--;
+		}
+		while (start > 0 && charAt(start - 1) != '\n' && charAt(start - 1) != '\r') {
+			start--;
+		}
+		// first line start after the inserted characters, which is preceded
+		// by an unchanged line terminator.  From there on, the edited input
+		// is the input of this Scanner from oldEnd.
+		int oldEnd = chunkEnd(offset + deleted + 1);
+		int end = oldEnd + delta;
+
+		// the changed lines, followed by the character after them for the lookahead of a \r
+		char[] changedChars = new char[end - start + 1];
+		getChars(start, offset, changedChars, 0);
+		inserted.getChars(0, inserted.length(), changedChars, offset - start);
+		getChars(offset + deleted, oldEnd, changedChars, offset - start + inserted.length());
+		changedChars[end - start] = oldEnd < limit ? charAt(oldEnd) : EOFchar;
+		Scanner changed = new Scanner(changedChars, start, 0, end - start, tableDriven, symbols).scan();
+
+		Piece piece = new Piece(changedChars, start, changed.tokens, changed.lines, start, end);
+		PieceTable table = pieces != null ? pieces : new PieceTable(new Piece(chars, 0, tokens, lines, 0, limit));
+		return new Scanner(table.edit(start, oldEnd, delta, piece), tableDriven, symbols);
+	}
+
+	/**
+	 * Returns the index of the first token whose position is at least pos,
+	 * or size() if there is none.
+	 * 
+	 * Precondition: this Scanner has been scanned and holds all its tokens.
+	 */
+	int tokenIndex(int pos) {
+		assert atEnd() && tokens.first == 0;
+		if (pieces != null) {
+			return pieces.tokenIndex(pos);
+		}
+		return tokens.search(pos);
+	}
+
+	/**
+	 * Marks the whole input of this Scanner as scanned, without scanning it,
+	 * once its tokens and line starts have been added to tokens and lines by
+	 * other means, as TokenCache does.
+	 * 
+	 * Precondition: this Scanner was created from bytes and has not scanned
+	 * any tokens.
+	 */
+	void scanned() {
+		assert input != null && !streaming && scanPos == 0;
+		reader = null;
+		scanPos = limit;
+		tokens.trimToSize();
+	}
+
+	/**
+	 * Returns true when the EOF token has been scanned.
+	 */
+	private boolean atEnd() {
+		return reader == null && scanPos >= limit;
+	}
+
+	/**
+	 * Scans input until one more token has been added to tokens.
+	 * 
+	 * @throws LexicalException
+	 * @throws IOException
+	 */
+	private void scanToken() throws LexicalException, IOException {
+		if (tableDriven) {
+			scanTokenWithTables();
+			return;
+		}
+		int pos = scanPos;
+		int startPos = pos;
 		State state = State.START;
+		int count = tokens.size;
+		int value = 0; // value of the digits of an INTEGER_LITERAL so far, -1 after an overflow
+		boolean invalid = false; // true if the STRING_LITERAL being scanned has an invalid escape sequence
 
-		while(pos < chars.length){
+		while (tokens.size == count && (pos < limit || reader != null)) {
+			if (pos + 1 >= limit && reader != null) {
+				// keep the token being scanned and the text of the retained tokens in the window
+				int keep = state == State.COMMENT ? pos : startPos;
+				if (tokens.size > 0 && input == null) {
+					keep = Math.min(keep, tokens.pos[0] - base);
+				}
+				int shift = fill(keep, pos);
+				pos -= shift;
+				startPos -= shift;
+			}
 			switch(state){
 
 			case START: {
@@ -300,9 +1201,8 @@ public class Scanner {
 
 				if(ch =='0')
 				{
-					tokens.add(new Token(Kind.INTEGER_LITERAL,startPos,1,line,posInLine));
+					tokens.add(Kind.INTEGER_LITERAL, base + startPos,1);
 					pos++;
-					posInLine++;
 				}
 				else if(ch == '"'){
 					state = State.STRING_LIT;
@@ -310,8 +1210,8 @@ public class Scanner {
 				}
 				else if(ch ==' ' || ch == '\t' || ch == '\f')
 				{
-					pos++;
-					posInLine++;
+					pos = skipBlanks(chars, pos + 1, limit - 1);
+					startPos = pos;
 					state = State.START;
 				}
 				else if(ch == '/')
@@ -334,33 +1234,29 @@ public class Scanner {
 				}
 				else if(ch == '\n')
 				{	pos++;
-				line++;
-				posInLine=1;
+				lines.add(base + pos);
 				}
 				else if(ch== '\r')
 				{
 					pos++;
-					line++;
-					posInLine = 1;
 					if(chars[pos] == '\n')
 					{  
 						pos++;
 						state = State.START;
 					}
+					lines.add(base + pos);
 				}
 				else if(ch == '=')
 				{
 					if(chars[pos+1] == '=')
 					{
-						tokens.add(new Token(Kind.OP_EQ, startPos, 2,line,posInLine));
+						tokens.add(Kind.OP_EQ, base + startPos, 2);
 						pos+=2;
-						posInLine+=2;
 					}
 					else
 					{
-						tokens.add(new Token(Kind.OP_ASSIGN, startPos, 1,line,posInLine));
+						tokens.add(Kind.OP_ASSIGN, base + startPos, 1);
 						pos++;
-						posInLine++;
 						
 					}
 				}
@@ -368,105 +1264,99 @@ public class Scanner {
 				{
 					if(chars[pos+1] == '>')
 					{
-						tokens.add(new Token(Kind.OP_RARROW, startPos, 2,line,posInLine));
+						tokens.add(Kind.OP_RARROW, base + startPos, 2);
 						pos+=2;
-						posInLine+=2;
 					}
 					else
 					{
-						tokens.add(new Token(Kind.OP_MINUS, startPos, 1,line,posInLine));
+						tokens.add(Kind.OP_MINUS, base + startPos, 1);
 						pos++;
-						posInLine++;	
 					}
 				}
 				else if(ch == '!')
 				{
 					if(chars[pos+1] == '=')
 					{
-						tokens.add(new Token(Kind.OP_NEQ, startPos, 2,line,posInLine));
+						tokens.add(Kind.OP_NEQ, base + startPos, 2);
 						pos+=2;
-						posInLine+=2;
 					}
 					else
 					{
-						tokens.add(new Token(Kind.OP_EXCL, startPos, 1,line,posInLine));
+						tokens.add(Kind.OP_EXCL, base + startPos, 1);
 						pos++;
-						posInLine++;	
 					}
 				}
 				else if(ch == '*')
 				{
 					if(chars[pos+1] == '*')
 					{
-						tokens.add(new Token(Kind.OP_POWER, startPos, 2,line,posInLine));
+						tokens.add(Kind.OP_POWER, base + startPos, 2);
 						pos+=2;
-						posInLine+=2;
 					}
 					else
 					{
-						tokens.add(new Token(Kind.OP_TIMES, startPos, 1,line,posInLine));
+						tokens.add(Kind.OP_TIMES, base + startPos, 1);
 						pos++;
-						posInLine++;	
 					}
 				}
 				else if(ch == '>')
 				{
 					if(chars[pos+1] == '=')
 					{
-						tokens.add(new Token(Kind.OP_GE, startPos, 2,line,posInLine));
+						tokens.add(Kind.OP_GE, base + startPos, 2);
 						pos+=2;
-						posInLine+=2;
 					}
 					else
 					{
-						tokens.add(new Token(Kind.OP_GT, startPos, 1,line,posInLine));
+						tokens.add(Kind.OP_GT, base + startPos, 1);
 						pos++;
-						posInLine++;	
 					}
 				}
 				else if(ch == '<')
 				{
 					if(chars[pos+1] == '=')
 					{
-						tokens.add(new Token(Kind.OP_LE, startPos, 2,line,posInLine));
+						tokens.add(Kind.OP_LE, base + startPos, 2);
 						pos+=2;
-						posInLine+=2;
 					}
 					else if(chars[pos+1] == '-')
 					{
-						tokens.add(new Token(Kind.OP_LARROW, startPos, 2,line,posInLine));
+						tokens.add(Kind.OP_LARROW, base + startPos, 2);
 						pos+=2;
-						posInLine+=2;
 					}
 					else
 					{
-						tokens.add(new Token(Kind.OP_LT, startPos, 1,line,posInLine));
+						tokens.add(Kind.OP_LT, base + startPos, 1);
 						pos++;
-						posInLine++;	
 					}
 				}
 				else if(ch == EOFchar){
-					if(pos!=chars.length-1) throw new LexicalException("EOF found before termination",pos);
-					tokens.add(new Token(Kind.EOF, startPos, 0,line,posInLine));
+					if (reader != null || pos != limit - 1) {
+						error("EOF found before termination", base + pos);
+						tokens.add(Kind.ERROR, base + startPos, 1);
+					} else {
+						tokens.add(Kind.EOF, base + startPos, 0);
+					}
 					pos++;
-					posInLine++;
 				}
-				else if(Character.isJavaIdentifierStart(ch))
+				else if(ch < 128 && Character.isJavaIdentifierStart(ch))
 				{
 					state = State.IN_IDENT;			
 				}
-				else if(kindMap.containsKey(Character.toString(ch)))
+				else if(ch < operatorKinds.length && operatorKinds[ch] != null)
 				{
-					tokens.add(new Token(kindMap.get(Character.toString(ch)),startPos,1,line,posInLine));
+					tokens.add(operatorKinds[ch], base + startPos,1);
 					pos++;
-					posInLine++;
 					state= State.START;
 				}
-				else if (Character.isDigit(ch)) {
+				else if (ch >= '1' && ch <= '9') {
 					state =State.IN_DIGIT;
+					value = 0;
 				}  
 				else {
-					throw new LexicalException("Invalid token",pos);
+					error("Invalid token", base + pos);
+					tokens.add(Kind.ERROR, base + startPos, 1);
+					pos++;
 				}
 			}break;
 			
@@ -474,18 +1364,21 @@ public class Scanner {
 				char ch = chars[pos];
 				if(ch == '"')
 				{
-					tokens.add(new Token(Kind.STRING_LITERAL,startPos,pos-startPos+1,line,posInLine));
+					tokens.add(invalid ? Kind.ERROR : Kind.STRING_LITERAL, base + startPos,pos-startPos+1);
 					pos++;
-					posInLine+=pos - startPos; 
 					state = State.START;
 				}
 				else if(ch == '\n' || ch =='\r')
 				{
-					throw new LexicalException("line seperator occured before line termination",pos);
+					error("line seperator occured before line termination", base + pos);
+					tokens.add(Kind.ERROR, base + startPos, pos - startPos);
+					state = State.START;
 				}
 				else if(ch == EOFchar)
 				{
-					throw new LexicalException("EOF occured before string literal termination",pos);
+					error("EOF occured before string literal termination", base + pos);
+					tokens.add(Kind.ERROR, base + startPos, pos - startPos);
+					state = State.START;
 				}
 				else if( ch == '\\')
 					{
@@ -496,7 +1389,10 @@ public class Scanner {
 						}
 						else
 						{
-							throw new LexicalException("Invalid escape sequence",pos+1);
+							// skip the \ and scan the next character as part of the literal
+							error("Invalid escape sequence", base + pos + 1);
+							invalid = true;
+							pos++;
 						}
 					}
 				else{
@@ -506,19 +1402,23 @@ public class Scanner {
 			
 			case IN_DIGIT:{
 				char ch = chars[pos];
-				if (Character.isDigit(ch)) {
+				if (ch >= '0' && ch <= '9') {
+					int digit = ch - '0';
+					if (value > (Integer.MAX_VALUE - digit) / 10) {
+						value = -1;
+					} else if (value >= 0) {
+						value = value * 10 + digit;
+					}
 					pos++;
 				}
 				else {
-					String num = new String(chars,startPos,pos-startPos);
-				try{
-					Integer.parseInt(num);
-				}
-				catch(NumberFormatException e)
-				{throw new LexicalException("Number:"+num+" too large", pos);}
-				tokens.add(new Token(Kind.INTEGER_LITERAL, startPos, pos - startPos,line,posInLine));
+					if (value < 0) {
+						error("Number:" + new String(chars, startPos, pos - startPos) + " too large", base + pos);
+						tokens.add(Kind.ERROR, base + startPos, pos - startPos);
+					} else {
+						tokens.add(Kind.INTEGER_LITERAL, base + startPos, pos - startPos, value);
+					}
 				
-				posInLine+=pos-startPos;
 				state = State.START;
 				}
 			}break;
@@ -531,25 +1431,13 @@ public class Scanner {
 					pos++;
 				}
 				else 
-				{	String token = new String(chars,startPos, pos-startPos);
-				if(kindMap.containsKey(token))
-				{tokens.add(new Token(kindMap.get(token),startPos,pos-startPos,line,posInLine));
-				state = State.START;
-				posInLine+= pos-startPos;}
-				else if(token.equals("true") || token.equals("false"))
-				{tokens.add(new Token(Kind.BOOLEAN_LITERAL,startPos,pos-startPos,line,posInLine));
-				state = State.START;
-				posInLine+= pos-startPos;
+				{	Kind kind = keywordKind(chars, startPos, pos - startPos);
+				if (kind == null) {
+					tokens.add(Kind.IDENTIFIER, base + startPos, pos - startPos, symbols.intern(chars, startPos, pos - startPos));
+				} else {
+					tokens.add(kind, base + startPos, pos - startPos);
 				}
-				else
-				{   tokens.add(new Token(Kind.IDENTIFIER, startPos, pos - startPos,line, posInLine));
-				posInLine+= pos- startPos; 
 				state = State.START;
-				/*if (ch == '\n') {
-					line++;
-					posInLine = 1;
-					}*/}
-
 				}
 			}break;
 
@@ -558,15 +1446,15 @@ public class Scanner {
 				if(ch == '/')
 				{
 					state = State.COMMENT;
-					posInLine+=pos-startPos;
 				}
 				else{
-					tokens.add(new Token(Kind.OP_DIV, startPos, 1,line, posInLine));
+					tokens.add(Kind.OP_DIV, base + startPos, 1);
 					state = State.START;
 				}
 			} break;
 				
 			case COMMENT:{
+				pos = skipComment(chars, pos, limit - 1);
 				char ch = chars[pos];
 				if(ch == '\n' || ch == '\r' )
 				{   state = State.START;
@@ -579,13 +1467,193 @@ public class Scanner {
 				{
 					state= State.COMMENT;
 					pos++;
-					posInLine++;			
 				}
 			}break;
 			}
 
 		}
-		return this;
+		scanPos = pos;
+	}
+
+	/**
+	 * Table driven version of scanToken.  Scans input until one more token has
+	 * been added to tokens.
+	 * 
+	 * @throws LexicalException
+	 * @throws IOException
+	 */
+	private void scanTokenWithTables() throws LexicalException, IOException {
+		final int[][] transitions = LexerTables.transitions;
+		final byte[] charClass = LexerTables.charClass;
+		final int start = State.START.ordinal();
+		final int comment = State.COMMENT.ordinal();
+		int pos = scanPos;
+		int startPos = pos;
+		int state = start;
+		int count = tokens.size;
+		boolean invalid = false; // true if the STRING_LITERAL being scanned has an invalid escape sequence
+
+		while (tokens.size == count && (pos < limit || reader != null)) {
+			if (pos + 1 >= limit && reader != null) {
+				// keep the token being scanned and the text of the retained tokens in the window
+				int keep = state == comment ? pos : startPos;
+				if (tokens.size > 0 && input == null) {
+					keep = Math.min(keep, tokens.pos[0] - base);
+				}
+				int shift = fill(keep, pos);
+				pos -= shift;
+				startPos -= shift;
+			}
+			if (state == start) {
+				startPos = pos;
+			}
+			char ch = chars[pos];
+			int transition = transitions[state][ch < 128 ? charClass[ch] : LexerTables.OTHER];
+			state = transition & LexerTables.STATE_MASK;
+			switch (transition >>> LexerTables.ACTION_SHIFT) {
+			case LexerTables.ADVANCE:
+				pos++;
+				break;
+			case LexerTables.SKIP_BLANKS:
+				pos = skipBlanks(chars, pos + 1, limit - 1);
+				startPos = pos;
+				break;
+			case LexerTables.SKIP_COMMENT:
+				pos = skipComment(chars, pos + 1, limit - 1);
+				break;
+			case LexerTables.GOTO:
+				break;
+			case LexerTables.NEWLINE:
+				pos++;
+				lines.add(base + pos);
+				break;
+			case LexerTables.RETURN:
+				pos++;
+				if (chars[pos] == '\n') {
+					pos++;
+				}
+				lines.add(base + pos);
+				break;
+			case LexerTables.ZERO_LITERAL:
+				tokens.add(Kind.INTEGER_LITERAL, base + startPos, 1);
+				pos++;
+				break;
+			case LexerTables.OPERATOR_TOKEN: {
+				Kind[] pairs = LexerTables.operatorPairs[ch];
+				char next = chars[pos + 1];
+				if (pairs != null && next < 128 && pairs[next] != null) {
+					tokens.add(pairs[next], base + startPos, 2);
+					pos += 2;
+				} else {
+					tokens.add(operatorKinds[ch], base + startPos, 1);
+					pos++;
+				}
+			}
+				break;
+			case LexerTables.END_OF_INPUT:
+				if (reader != null || pos != limit - 1) {
+					error("EOF found before termination", base + pos);
+					tokens.add(Kind.ERROR, base + startPos, 1);
+				} else {
+					tokens.add(Kind.EOF, base + startPos, 0);
+				}
+				pos++;
+				break;
+			case LexerTables.INVALID:
+				error("Invalid token", base + pos);
+				tokens.add(Kind.ERROR, base + startPos, 1);
+				pos++;
+				break;
+			case LexerTables.END_DIGITS: {
+				int value = 0;
+				for (int i = startPos; i < pos; i++) {
+					int digit = chars[i] - '0';
+					if (value > (Integer.MAX_VALUE - digit) / 10) {
+						value = -1;
+						break;
+					}
+					value = value * 10 + digit;
+				}
+				if (value < 0) {
+					error("Number:" + new String(chars, startPos, pos - startPos) + " too large", base + pos);
+					tokens.add(Kind.ERROR, base + startPos, pos - startPos);
+				} else {
+					tokens.add(Kind.INTEGER_LITERAL, base + startPos, pos - startPos, value);
+				}
+			}
+				break;
+			case LexerTables.END_IDENT: {
+				Kind kind = keywordKind(chars, startPos, pos - startPos);
+				if (kind == null) {
+					tokens.add(Kind.IDENTIFIER, base + startPos, pos - startPos, symbols.intern(chars, startPos, pos - startPos));
+				} else {
+					tokens.add(kind, base + startPos, pos - startPos);
+				}
+			}
+				break;
+			case LexerTables.END_DIV:
+				tokens.add(Kind.OP_DIV, base + startPos, 1);
+				break;
+			case LexerTables.ESCAPE: {
+				char next = chars[pos + 1];
+				if (next < 128 && LexerTables.escapes[next]) {
+					pos += 2;
+				} else {
+					// skip the \ and scan the next character as part of the literal
+					error("Invalid escape sequence", base + pos + 1);
+					invalid = true;
+					pos++;
+				}
+			}
+				break;
+			case LexerTables.END_STRING:
+				tokens.add(invalid ? Kind.ERROR : Kind.STRING_LITERAL, base + startPos, pos - startPos + 1);
+				pos++;
+				break;
+			case LexerTables.LINE_IN_STRING:
+				error("line seperator occured before line termination", base + pos);
+				tokens.add(Kind.ERROR, base + startPos, pos - startPos);
+				break;
+			case LexerTables.EOF_IN_STRING:
+				error("EOF occured before string literal termination", base + pos);
+				tokens.add(Kind.ERROR, base + startPos, pos - startPos);
+				break;
+			}
+		}
+		scanPos = pos;
+	}
+
+	/**
+	 * Reads more input into the window until the character after pos is
+	 * available or the reader is exhausted.  Characters before keep are
+	 * dropped from the window first.
+	 * 
+	 * @param keep window index of the first character to keep
+	 * @param pos window index of the current character
+	 * @return the number of characters dropped, by which all window indices
+	 *         must be decreased
+	 * @throws IOException
+	 */
+	private int fill(int keep, int pos) throws IOException {
+		if (keep > 0) {
+			System.arraycopy(chars, keep, chars, 0, limit - keep);
+			limit -= keep;
+			base += keep;
+			pos -= keep;
+		}
+		while (reader != null && pos + 1 >= limit) {
+			if (limit == chars.length) {
+				chars = Arrays.copyOf(chars, chars.length * 2);
+			}
+			int n = reader.read(chars, limit, chars.length - limit);
+			if (n < 0) {
+				chars[limit++] = EOFchar;
+				reader = null;
+			} else {
+				limit += n;
+			}
+		}
+		return keep;
 	}
 
 
@@ -595,7 +1663,8 @@ public class Scanner {
 	 * @return
 	 */
 	public boolean hasTokens() {
-		return nextTokenPos < tokens.size();
+		fetch(nextTokenPos);
+		return nextTokenPos < size();
 	}
 
 	/**
@@ -608,7 +1677,7 @@ public class Scanner {
 	 * @return
 	 */
 	public Token nextToken() {
-		return tokens.get(nextTokenPos++);
+		return tokenAt(nextTokenPos++);
 	}
 
 	/**
@@ -623,9 +1692,214 @@ public class Scanner {
 	 * @return next Token.
 	 */
 	public Token peek() {
-		return tokens.get(nextTokenPos);
+		return tokenAt(nextTokenPos);
+	}
+
+	/**
+	 * Returns the number of tokens created so far, including any that a
+	 * streaming Scanner no longer retains.
+	 * 
+	 * @return
+	 */
+	public int size() {
+		if (pieces != null) {
+			return pieces.tokenCount();
+		}
+		return tokens.first + tokens.size;
+	}
+
+	/**
+	 * Returns the Kind of the token at the given index without creating a
+	 * Token object. Together with tokenAt, this lets a client such as the
+	 * Parser walk the tokens with its own cursor.
+	 * 
+	 * Precondition:  0 <= index < size()
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public Kind kindAt(int index) {
+		fetch(index);
+		checkIndex(index);
+		if (pieces != null) {
+			int k = pieces.pieceOfToken(index);
+			Piece piece = pieces.pieces[k];
+			return piece.tokens.kind(piece.firstToken + index - pieces.tokenBases[k]);
+		}
+		return tokens.kind(index - tokens.first);
+	}
+
+	/**
+	 * Returns a new Token object for the token at the given index.  Tokens are
+	 * not retained by the Scanner, so two calls with the same index return
+	 * distinct, but equal, Tokens.
+	 * 
+	 * Precondition:  0 <= index < size()
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public Token tokenAt(int index) {
+		fetch(index);
+		checkIndex(index);
+		if (pieces != null) {
+			return pieceTokenAt(index);
+		}
+		int i = index - tokens.first;
+		int pos = tokens.pos[i];
+		int line = lines.indexOf(pos);
+		return new Token(tokens.kind(i), pos, tokens.length[i], lines.first + line + 1, pos - lines.starts[line] + 1,
+				tokens.values[i]);
+	}
+
+	/**
+	 * Returns a new Token object for the token at the given index of a
+	 * Scanner returned by edit.
+	 */
+	private Token pieceTokenAt(int index) {
+		int k = pieces.pieceOfToken(index);
+		Piece piece = pieces.pieces[k];
+		int i = piece.firstToken + index - pieces.tokenBases[k];
+		int stored = piece.tokens.pos[i];
+		int line = piece.lines.indexOf(stored);
+		return new Token(piece.tokens.kind(i), stored - piece.start + pieces.starts[k], piece.tokens.length[i],
+				pieces.lineBases[k] + line - piece.firstLine + 1, stored - piece.lines.starts[line] + 1,
+				piece.tokens.values[i]);
 	}
 
+	/**
+	 * Returns the position of the internal iterator, that is, the index of the
+	 * Token that will be returned by the next call to nextToken.
+	 * 
+	 * @return
+	 */
+	public int cursor() {
+		return nextTokenPos;
+	}
+
+	private void checkIndex(int index) {
+		if (index < tokens.first || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+	}
+
+	/**
+	 * Scans until the token with the given index is available or the EOF
+	 * token has been scanned.  Does nothing once scan has been called.
+	 * 
+	 * A streaming Scanner drops the tokens more than RETAINED_TOKENS before the
+	 * highest index requested so far, and the characters they were scanned
+	 * from, when its buffer is full.
+	 * 
+	 * Since tokenAt and the methods built on it do not declare exceptions, a
+	 * LexicalException is rethrown as an IllegalStateException and an
+	 * IOException as an UncheckedIOException, with the original exception as
+	 * the cause.
+	 */
+	private void fetch(int index) {
+		// only a streaming Scanner uses requested, so that tokenAt on a
+		// scanned Scanner does not write, see Parser.parseParallel
+		if (streaming && index > requested) {
+			requested = index;
+		}
+		try {
+			while (index >= size() && !atEnd()) {
+				if (streaming && tokens.size == tokens.kinds.length) {
+					tokens.discard(requested - RETAINED_TOKENS);
+					if (tokens.size > 0) {
+						lines.discard(tokens.pos[0]);
+					}
+				}
+				scanToken();
+			}
+		} catch (LexicalException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Returns the index in chars of the input characters from pos to 
+	 * pos + length.
+	 * 
+	 * @throws IllegalStateException if the characters are no longer in chars
+	 */
+	int offset(int pos, int length) {
+		if (!inWindow(pos, length)) {
+			throw new IllegalStateException("Text at position " + pos + " is no longer retained by the Scanner");
+		}
+		if (pieces != null) {
+			return pieces.index(pos);
+		}
+		return pos - base;
+	}
+
+	/**
+	 * Returns the array that holds the input character at position pos, when
+	 * it is retained: chars, or the chars of its piece.  Its index there is
+	 * given by offset.
+	 */
+	private char[] charsAt(int pos) {
+		return pieces == null ? chars : pieces.pieces[pieces.pieceAt(pos)].chars;
+	}
+
+	/**
+	 * Returns the input character at position pos.
+	 * 
+	 * Precondition: this Scanner holds its whole input.
+	 */
+	private char charAt(int pos) {
+		return pieces == null ? chars[pos] : pieces.charAt(pos);
+	}
+
+	/**
+	 * Copies the input characters from position from to position to into
+	 * dst, starting at index begin.
+	 * 
+	 * Precondition: this Scanner holds its whole input.
+	 */
+	private void getChars(int from, int to, char[] dst, int begin) {
+		if (pieces == null) {
+			System.arraycopy(chars, from, dst, begin, to - from);
+		} else {
+			pieces.getChars(from, to, dst, begin);
+		}
+	}
+
+	/**
+	 * Returns true if the input characters from pos to pos + length are in
+	 * chars.
+	 */
+	boolean inWindow(int pos, int length) {
+		return pos >= base && pos + length <= base + limit;
+	}
+
+	/**
+	 * Returns true if chars holds the whole input, as it does for a Scanner
+	 * created from a String, rather than a window on it.
+	 */
+	private boolean holdsInput() {
+		return !streaming && input == null;
+	}
+
+
+	/**
+	 * Returns the input characters from pos to pos + length, re-reading them
+	 * from the input bytes if they are no longer in chars.
+	 * 
+	 * @throws IllegalStateException if the characters are no longer available
+	 */
+	String source(int pos, int length) {
+		if (input != null && !inWindow(pos, length)) {
+			char[] text = new char[length];
+			for (int i = 0; i < length; i++) {
+				text[i] = (char) (input.get(pos + i) & 0xff);
+			}
+			return new String(text);
+		}
+		return String.copyValueOf(charsAt(pos), offset(pos, length), length);
+	}
 
 	/**
 	 * Resets the internal iterator so that the next call to peek or nextToken
@@ -641,8 +1915,8 @@ public class Scanner {
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
 		sb.append("Tokens:\n");
-		for (int i = 0; i < tokens.size(); i++) {
-			sb.append(tokens.get(i)).append('\n');
+		for (int i = tokens.first; i < size(); i++) {
+			sb.append(tokenAt(i)).append('\n');
 		}
 		return sb.toString();
 	}
@@ -0,0 +1,661 @@
+package cop5556fa17;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import cop5556fa17.Scanner.Kind;
+import cop5556fa17.Scanner.Token;
+
+/**
+ * Benchmarks for the Scanner.
+ *
+ * These are plain programs rather than unit tests. Run with, for example,
+ *
+ * java -Xmx2g -cp bin cop5556fa17.ScannerBenchmark memory 200000
+ *
+ * where the first argument names the benchmark and the second is the number
+ * of statements in the generated input program.  Timed benchmarks report the
+ * average time and the bytes allocated per operation over several
+ * iterations, after warming up.
+ *
+ * The throughput benchmark reports MB/s and tokens/s of scan over each of the
+ * corpora of ScannerCorpus, for example
+ *
+ * java -cp bin cop5556fa17.ScannerBenchmark throughput 10000000 [corpora]
+ *
+ * where the second argument is the size in characters of each corpus, and
+ * the optional third is a directory of corpora written by ScannerCorpus to
+ * read instead of generating them.
+ *
+ */
+public class ScannerBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String benchmark = args.length > 0 ? args[0] : "memory";
+		int statements = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+		if (benchmark.equals("memory")) {
+			memory(statements);
+		} else if (benchmark.equals("keywords")) {
+			keywords(statements);
+		} else if (benchmark.equals("tables")) {
+			tables(statements);
+		} else if (benchmark.equals("parallel")) {
+			parallel(statements);
+		} else if (benchmark.equals("edit")) {
+			edit(statements);
+		} else if (benchmark.equals("symbols")) {
+			symbols(statements);
+		} else if (benchmark.equals("literals")) {
+			literals(statements);
+		} else if (benchmark.equals("text")) {
+			text(statements);
+		} else if (benchmark.equals("comments")) {
+			comments(statements);
+		} else if (benchmark.equals("reuse")) {
+			reuse(statements);
+		} else if (benchmark.equals("cache")) {
+			cache(statements);
+		} else if (benchmark.equals("errors")) {
+			errors(statements);
+		} else if (benchmark.equals("bytes")) {
+			bytes(statements);
+		} else if (benchmark.equals("throughput")) {
+			throughput(statements, args.length > 2 ? args[2] : null);
+		} else {
+			System.out.println("unknown benchmark " + benchmark);
+		}
+	}
+
+	/**
+	 * Returns a program with the given number of declarations and assignment
+	 * statements, similar to the output of our program generators.
+	 *
+	 * @param statements
+	 * @return
+	 */
+	static String program(int statements) {
+		StringBuilder sb = new StringBuilder("generated\n");
+		for (int i = 0; i < statements; i++) {
+			switch (i % 4) {
+			case 0:
+				sb.append("int v").append(i).append(" = ").append(i).append(" * 3 + 1;\n");
+				break;
+			case 1:
+				sb.append("boolean b").append(i).append(" = v").append(i - 1).append(" >= 42 & true;\n");
+				break;
+			case 2:
+				sb.append("image[512,512] img").append(i).append(" <- \"images/in").append(i).append(".png\";\n");
+				break;
+			default:
+				sb.append("img").append(i - 1).append("[[x,y]] = img").append(i - 1)
+						.append("[x,y] + sin(x) % 255; // update pixel\n");
+				break;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Compares the bytes needed per token by the TokenBuffer and LineIndex with the bytes
+	 * needed when every token is held as a Token object in an ArrayList, as
+	 * the Scanner used to do.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void memory(int statements) throws Exception {
+		String input = program(statements);
+
+		long before = usedHeap();
+		Scanner scanner = new Scanner(input).scan();
+		long after = usedHeap();
+		int n = scanner.size();
+		long charBytes = 16 + 2L * scanner.chars.length;
+		long bufferBytes = after - before - charBytes;
+
+		before = usedHeap();
+		ArrayList<Token> list = new ArrayList<Token>();
+		for (int i = 0; i < n; i++) {
+			list.add(scanner.tokenAt(i));
+		}
+		after = usedHeap();
+		long listBytes = after - before;
+
+		System.out.println("tokens:                " + n);
+		System.out.printf("TokenBuffer:           %.1f bytes/token (%.1f computed from array sizes)%n",
+				(double) bufferBytes / n, (double) (scanner.tokens.arrayBytes() + scanner.lines.arrayBytes()) / n);
+		System.out.printf("ArrayList<Token>:      %.1f bytes/token%n", (double) listBytes / list.size());
+	}
+
+	/**
+	 * Returns a program dominated by identifiers and keywords.
+	 */
+	static String identifierProgram(int statements) {
+		StringBuilder sb = new StringBuilder("identifiers\n");
+		for (int i = 0; i < statements; i++) {
+			sb.append("boolean polar_value").append(i).append(" = cart_x[x, y] == DEF_X & true | false;\n");
+			sb.append("image imageName").append(i).append(" <- file_path").append(i).append(";\n");
+			sb.append("int atan2 = abs(cos(sin(log)))").append(" + a * r - A / R;\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Compares the time and allocation per lookup of the table based keyword
+	 * recognition used by the Scanner with a lookup in kindMap, the way the
+	 * Scanner used to recognize keywords, over the identifiers, keywords and
+	 * boolean literals of an identifier heavy program.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void keywords(int statements) throws Exception {
+		final Scanner scanner = new Scanner(identifierProgram(statements)).scan();
+		final char[] chars = scanner.chars;
+		int n = 0;
+		final int[] pos = new int[scanner.size()];
+		final int[] length = new int[scanner.size()];
+		for (int i = 0; i < scanner.size(); i++) {
+			Token t = scanner.tokenAt(i);
+			if (Character.isJavaIdentifierStart(chars[t.pos])) {
+				pos[n] = t.pos;
+				length[n] = t.length;
+				n++;
+			}
+		}
+		final int words = n;
+		final Kind[] result = new Kind[words];
+		measure("keywordTable", words, new Task() {
+			public void run() {
+				for (int i = 0; i < words; i++) {
+					Kind kind = Scanner.keywordKind(chars, pos[i], length[i]);
+					result[i] = kind == null ? Kind.IDENTIFIER : kind;
+				}
+			}
+		});
+		measure("kindMap", words, new Task() {
+			public void run() {
+				for (int i = 0; i < words; i++) {
+					String text = new String(chars, pos[i], length[i]);
+					if (Scanner.kindMap.containsKey(text)) {
+						result[i] = Scanner.kindMap.get(text);
+					} else if (text.equals("true") || text.equals("false")) {
+						result[i] = Kind.BOOLEAN_LITERAL;
+					} else {
+						result[i] = Kind.IDENTIFIER;
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Compares the time and allocation per character of the hand written and
+	 * the table driven lexers.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void tables(int statements) throws Exception {
+		final String input = program(statements) + identifierProgram(statements / 4);
+		measure("handWritten", input.length(), new Task() {
+			public void run() throws Exception {
+				new Scanner(input).scan();
+			}
+		});
+		measure("tableDriven", input.length(), new Task() {
+			public void run() throws Exception {
+				new Scanner(input).tableDriven().scan();
+			}
+		});
+	}
+
+	/**
+	 * Measures the time per character of scanParallel on pools with 1, 2, 4,
+	 * ... threads, up to the number of available processors, and of scan for
+	 * comparison.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void parallel(int statements) throws Exception {
+		final String input = program(statements);
+		measure("scan", input.length(), new Task() {
+			public void run() throws Exception {
+				new Scanner(input).scan();
+			}
+		});
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= processors; threads *= 2) {
+			final ForkJoinPool pool = new ForkJoinPool(threads);
+			measure("scanParallel " + threads, input.length(), new Task() {
+				public void run() throws Exception {
+					new Scanner(input).scanParallel(pool, Scanner.PARALLEL_CHUNK_SIZE);
+				}
+			});
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Measures the time of an edit that changes one character in the middle
+	 * of programs of statements / 100, statements / 10 and statements
+	 * statements, with Scanner.edit and by scanning the edited program again.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void edit(int statements) throws Exception {
+		for (int n = Math.max(1, statements / 100); n <= statements; n *= 10) {
+			final String input = program(n);
+			final Scanner scanner = new Scanner(input).scan();
+			final int offset = input.indexOf(" * 3", input.length() / 2) + 1;
+			final String edited = input.substring(0, offset) + "+" + input.substring(offset + 1);
+			measure("edit " + n, 1, new Task() {
+				public void run() throws Exception {
+					scanner.edit(offset, 1, "+");
+				}
+			});
+			measure("scan " + n, 1, new Task() {
+				public void run() throws Exception {
+					new Scanner(edited).scan();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns a program with the given number of declarations whose
+	 * initializers refer to a few variables.
+	 */
+	static String referenceProgram(int statements) {
+		StringBuilder sb = new StringBuilder("references\n");
+		sb.append("int count = 0;\nint total = 1;\nint step = 2;\nboolean done = false;\n");
+		for (int i = 0; i < statements; i++) {
+			switch (i % 2) {
+			case 0:
+				sb.append("int t").append(i).append(" = total + count * step - total % step;\n");
+				break;
+			default:
+				sb.append("boolean d").append(i).append(" = total > count & done | done;\n");
+				break;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Measures the time and allocation per identifier of getting the names of
+	 * the identifiers of a program that refers to a few variables, as the AST
+	 * constructors do.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void symbols(int statements) throws Exception {
+		final Scanner scanner = new Scanner(referenceProgram(statements)).scan();
+		int n = 0;
+		for (int i = 0; i < scanner.size(); i++) {
+			if (scanner.kindAt(i) == Kind.IDENTIFIER) {
+				n++;
+			}
+		}
+		final int[] identifiers = new int[n];
+		n = 0;
+		for (int i = 0; i < scanner.size(); i++) {
+			if (scanner.kindAt(i) == Kind.IDENTIFIER) {
+				identifiers[n++] = i;
+			}
+		}
+		final String[] names = new String[n];
+		measure("identifier names", n, new Task() {
+			public void run() {
+				for (int i = 0; i < identifiers.length; i++) {
+					names[i] = scanner.tokenAt(identifiers[i]).getText();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns a lookup table unrolled into declarations, one integer literal
+	 * per statement.
+	 */
+	static String literalProgram(int statements) {
+		StringBuilder sb = new StringBuilder("table\n");
+		for (int i = 0; i < statements; i++) {
+			sb.append("int t").append(i).append(" = ").append((i * 2654435761L) & Integer.MAX_VALUE).append(";\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Measures scanning a program of integer literals, in both modes, and
+	 * getting the values of the literals.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void literals(int statements) throws Exception {
+		final String input = literalProgram(statements);
+		measure("scan literals", statements, new Task() {
+			public void run() throws Exception {
+				new Scanner(input).scan();
+			}
+		});
+		measure("scan literals (tables)", statements, new Task() {
+			public void run() throws Exception {
+				new Scanner(input).tableDriven().scan();
+			}
+		});
+		final Scanner scanner = new Scanner(input).scan();
+		measure("intVal", statements, new Task() {
+			public void run() {
+				long sum = 0;
+				for (int i = 0; i < scanner.size(); i++) {
+					if (scanner.kindAt(i) == Kind.INTEGER_LITERAL) {
+						sum += scanner.tokenAt(i).intVal();
+					}
+				}
+				if (sum == 42) {
+					System.out.println(sum);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Measures getting the text of the string literals of the generated
+	 * program, which are file paths without escape sequences, as a String
+	 * with getText and as a CharSequence with text.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void text(int statements) throws Exception {
+		final Scanner scanner = new Scanner(program(statements)).scan();
+		int n = 0;
+		for (int i = 0; i < scanner.size(); i++) {
+			if (scanner.kindAt(i) == Kind.STRING_LITERAL) {
+				n++;
+			}
+		}
+		final int[] literals = new int[n];
+		n = 0;
+		for (int i = 0; i < scanner.size(); i++) {
+			if (scanner.kindAt(i) == Kind.STRING_LITERAL) {
+				literals[n++] = i;
+			}
+		}
+		measure("getText", n, new Task() {
+			public void run() {
+				int hash = 0;
+				for (int i = 0; i < literals.length; i++) {
+					hash += scanner.tokenAt(literals[i]).getText().hashCode();
+				}
+				if (hash == 42) {
+					System.out.println(hash);
+				}
+			}
+		});
+		measure("text", n, new Task() {
+			public void run() {
+				int hash = 0;
+				for (int i = 0; i < literals.length; i++) {
+					hash += scanner.tokenAt(literals[i]).text().hashCode();
+				}
+				if (hash == 42) {
+					System.out.println(hash);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Measures the throughput of scan, in both modes, over each of the corpora
+	 * of ScannerCorpus, generated with the given size or read from dir if it
+	 * is not null.
+	 *
+	 * @param size
+	 * @param dir
+	 * @throws Exception
+	 */
+	static void throughput(int size, String dir) throws Exception {
+		for (String name : ScannerCorpus.NAMES) {
+			final String input = dir == null ? ScannerCorpus.generate(name, size)
+					: new String(Files.readAllBytes(Paths.get(dir, name + ".txt")), StandardCharsets.ISO_8859_1);
+			int tokens = new Scanner(input).scan().size();
+			throughput(name, input.length(), tokens, new Task() {
+				public void run() throws Exception {
+					new Scanner(input).scan();
+				}
+			});
+			throughput(name + " (tables)", input.length(), tokens, new Task() {
+				public void run() throws Exception {
+					new Scanner(input).tableDriven().scan();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Compares the memory held for the input, and the time per character of
+	 * scan, of a Scanner created from a String and of one created from the
+	 * bytes of the input.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void bytes(int statements) throws Exception {
+		final String input = program(statements);
+		final byte[] bytes = input.getBytes(StandardCharsets.ISO_8859_1);
+		Scanner scanner = new Scanner(bytes).scan();
+		System.out.printf("String input:          %d bytes%n", 16 + 2L * new Scanner(input).chars.length);
+		System.out.printf("byte[] input:          %d bytes (%d window)%n", 16 + bytes.length + 16 + 2L * scanner.chars.length,
+				16 + 2L * scanner.chars.length);
+		measure("scan String", input.length(), new Task() {
+			public void run() throws Exception {
+				new Scanner(input).scan();
+			}
+		});
+		measure("scan byte[]", input.length(), new Task() {
+			public void run() throws Exception {
+				new Scanner(bytes).scan();
+			}
+		});
+	}
+
+	/**
+	 * Returns a program in which each declaration is preceded by a block of
+	 * comments, like a license header, and indented.
+	 */
+	static String commentProgram(int statements) {
+		StringBuilder sb = new StringBuilder("commented\n");
+		for (int i = 0; i < statements; i++) {
+			sb.append("// ----------------------------------------------------------------------\n");
+			sb.append("// Copyright (c) 2017 The Authors.  Licensed under the Apache License,\n");
+			sb.append("// Version 2.0; you may not use this file except in compliance with it.\n");
+			sb.append("// ----------------------------------------------------------------------\n");
+			sb.append("        int v").append(i).append(" = ").append(i).append(";        // value ").append(i)
+					.append("\n\n");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Measures the time per character of scan, in both modes, over a program
+	 * dominated by comments and indentation.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void comments(int statements) throws Exception {
+		final String input = commentProgram(statements);
+		measure("comments", input.length(), new Task() {
+			public void run() throws Exception {
+				new Scanner(input).scan();
+			}
+		});
+		measure("comments (tables)", input.length(), new Task() {
+			public void run() throws Exception {
+				new Scanner(input).tableDriven().scan();
+			}
+		});
+	}
+
+	/**
+	 * Compares the time and allocation per program of scanning many small
+	 * programs, of the given number of statements, with a new Scanner for
+	 * each and with the reused Scanner of the current thread.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void reuse(int statements) throws Exception {
+		final String[] programs = new String[1000];
+		for (int i = 0; i < programs.length; i++) {
+			programs[i] = program(statements + i % 7);
+		}
+		measure("new Scanner", programs.length, new Task() {
+			public void run() throws Exception {
+				for (String program : programs) {
+					new Scanner(program).scan();
+				}
+			}
+		});
+		measure("forCurrentThread", programs.length, new Task() {
+			public void run() throws Exception {
+				for (String program : programs) {
+					Scanner.forCurrentThread(program).scan();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Compares the time per character of loading the tokens of a source file
+	 * from a TokenCache with that of reading and scanning it.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void cache(int statements) throws Exception {
+		Path dir = Files.createTempDirectory("tokens");
+		final Path file = dir.resolve("program.dsl");
+		String input = program(statements);
+		Files.write(file, input.getBytes(StandardCharsets.ISO_8859_1));
+		final TokenCache cache = new TokenCache(dir.resolve("cache"), Long.MAX_VALUE);
+		cache.scan(file);
+		System.out.printf("entry:                 %.1f bytes/token%n",
+				(double) cache.size() / new Scanner(input).scan().size());
+		measure("scan file", input.length(), new Task() {
+			public void run() throws Exception {
+				new Scanner(Files.readAllBytes(file)).scan();
+			}
+		});
+		measure("load from cache", input.length(), new Task() {
+			public void run() throws Exception {
+				cache.scan(file);
+			}
+		});
+		cache.clear();
+	}
+
+	/**
+	 * Measures the time per character of a recovering scan of the generated
+	 * program, and of the program with an error in every statement.
+	 *
+	 * @param statements
+	 * @throws Exception
+	 */
+	static void errors(int statements) throws Exception {
+		final String input = program(statements);
+		final String invalid = input.replace(";\n", "; #\n");
+		measure("recovering", input.length(), new Task() {
+			public void run() throws Exception {
+				new Scanner(input).recovering().scan();
+			}
+		});
+		measure("recovering, errors", invalid.length(), new Task() {
+			public void run() throws Exception {
+				new Scanner(invalid).recovering().scan();
+			}
+		});
+	}
+
+	interface Task {
+		void run() throws Exception;
+	}
+
+	static final int WARMUP_ITERATIONS = 5;
+	static final int ITERATIONS = 10;
+
+	/**
+	 * Runs task for the warmup and measured iterations and prints the average
+	 * time and bytes allocated by this thread per operation, where one run of
+	 * the task performs the given number of operations.
+	 */
+	static void measure(String name, long operations, Task task) throws Exception {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			task.run();
+		}
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			task.run();
+		}
+		long time = System.nanoTime() - start;
+		bytes = allocatedBytes() - bytes;
+		System.out.printf("%-24s %10.2f ns/op %10.2f bytes/op%n", name, (double) time / ITERATIONS / operations,
+				(double) bytes / ITERATIONS / operations);
+	}
+
+	/**
+	 * Runs task, which scans the given number of characters into the given
+	 * number of tokens, for the warmup and measured iterations and prints the
+	 * throughput in MB/s, counting one byte per character, and in millions
+	 * of tokens/s, and the bytes allocated per token.
+	 */
+	static void throughput(String name, long chars, long tokens, Task task) throws Exception {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			task.run();
+		}
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			task.run();
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		bytes = allocatedBytes() - bytes;
+		System.out.printf("%-24s %10.2f MB/s %10.2f Mtokens/s %10.2f bytes/token%n", name,
+				chars * ITERATIONS / seconds / 1e6, tokens * ITERATIONS / seconds / 1e6,
+				(double) bytes / ITERATIONS / tokens);
+	}
+
+	/**
+	 * Returns the number of bytes allocated so far by the current thread, or 0
+	 * if the JVM does not support allocation measurement.
+	 */
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+}
@@ -0,0 +1,152 @@
+package cop5556fa17;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Generator of synthetic inputs for the throughput benchmark of the Scanner,
+ * see ScannerBenchmark.throughput.
+ *
+ * Each corpus stresses one state of the Scanner:
+ *
+ * comments     COMMENT, lines that are mostly // comments
+ * identifiers  IN_IDENT, identifiers, keywords and boolean literals
+ * strings      STRING_LIT, long string literals with a few escapes
+ * integers     IN_DIGIT, integer literals of all lengths
+ * operators    START and AFTER_DIV, dense one and two character operators
+ *
+ * The corpora are generated from a fixed seed, so a given name and size always
+ * gives the same input.  To write them to files, run for example
+ *
+ * java -cp bin cop5556fa17.ScannerCorpus corpora 10000000
+ *
+ * where the arguments are the directory and the approximate size in
+ * characters of each corpus.
+ *
+ */
+public class ScannerCorpus {
+
+	static final String[] NAMES = { "comments", "identifiers", "strings", "integers", "operators" };
+
+	static final long SEED = 5556;
+
+	static final String[] KEYWORDS = { "int", "boolean", "image", "url", "file", "x", "y", "r", "a", "X", "Y",
+			"Z", "A", "R", "DEF_X", "DEF_Y", "SCREEN", "cart_x", "cart_y", "polar_a", "polar_r", "abs", "sin",
+			"cos", "atan", "log", "true", "false" };
+
+	static final String[] OPERATORS = { "=", ">", "<", "!", "?", ":", "==", "!=", "<=", ">=", "&", "|", "+",
+			"-", "*", "/", "%", "**", "->", "<-", "@", "(", ")", "[", "]", ";", "," };
+
+	static final String LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_$0123456789";
+
+	public static void main(String[] args) throws IOException {
+		File dir = new File(args.length > 0 ? args[0] : "corpora");
+		int size = args.length > 1 ? Integer.parseInt(args[1]) : 1 << 20;
+		dir.mkdirs();
+		for (String name : NAMES) {
+			File file = new File(dir, name + ".txt");
+			Files.write(file.toPath(), generate(name, size).getBytes(StandardCharsets.ISO_8859_1));
+			System.out.println(file + ": " + file.length() + " bytes");
+		}
+	}
+
+	/**
+	 * Returns the corpus with the given name, with at least size characters.
+	 *
+	 * @throws IllegalArgumentException if there is no corpus with that name
+	 */
+	static String generate(String name, int size) {
+		Random random = new Random(SEED);
+		StringBuilder sb = new StringBuilder(size + 200);
+		while (sb.length() < size) {
+			if (name.equals("comments")) {
+				commentLine(sb, random);
+			} else if (name.equals("identifiers")) {
+				identifierLine(sb, random);
+			} else if (name.equals("strings")) {
+				stringLine(sb, random);
+			} else if (name.equals("integers")) {
+				integerLine(sb, random);
+			} else if (name.equals("operators")) {
+				operatorLine(sb, random);
+			} else {
+				throw new IllegalArgumentException("unknown corpus " + name);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void commentLine(StringBuilder sb, Random random) {
+		if (random.nextInt(4) == 0) {
+			sb.append("x = x + 1; ");
+		}
+		sb.append("//");
+		int words = 4 + random.nextInt(12);
+		for (int i = 0; i < words; i++) {
+			sb.append(' ');
+			word(sb, random, 1 + random.nextInt(10));
+		}
+		sb.append(random.nextInt(8) == 0 ? "\r\n" : "\n");
+	}
+
+	private static void identifierLine(StringBuilder sb, Random random) {
+		int words = 4 + random.nextInt(8);
+		for (int i = 0; i < words; i++) {
+			if (random.nextBoolean()) {
+				sb.append(KEYWORDS[random.nextInt(KEYWORDS.length)]);
+			} else {
+				sb.append((char) ('a' + random.nextInt(26)));
+				word(sb, random, random.nextInt(16));
+			}
+			sb.append(' ');
+		}
+		sb.append(";\n");
+	}
+
+	private static void stringLine(StringBuilder sb, Random random) {
+		sb.append("url u").append(random.nextInt(1000)).append(" = \"");
+		int length = 40 + random.nextInt(200);
+		for (int i = 0; i < length; i++) {
+			if (random.nextInt(50) == 0) {
+				sb.append("\\t");
+			} else {
+				sb.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+				if (random.nextInt(8) == 0) {
+					sb.append(random.nextBoolean() ? '/' : ' ');
+				}
+			}
+		}
+		sb.append("\";\n");
+	}
+
+	private static void integerLine(StringBuilder sb, Random random) {
+		sb.append("int t").append(random.nextInt(1000)).append(" =");
+		int literals = 4 + random.nextInt(8);
+		for (int i = 0; i < literals; i++) {
+			sb.append(i == 0 ? " " : " + ").append(random.nextInt(Integer.MAX_VALUE) >>> random.nextInt(31));
+		}
+		sb.append(";\n");
+	}
+
+	private static void operatorLine(StringBuilder sb, Random random) {
+		int operators = 8 + random.nextInt(24);
+		for (int i = 0; i < operators; i++) {
+			sb.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+			// a blank keeps = = from becoming ==, and / / from starting a comment
+			if (random.nextInt(3) == 0 || sb.charAt(sb.length() - 1) == '/') {
+				sb.append(' ');
+			}
+		}
+		sb.append('\n');
+	}
+
+	private static void word(StringBuilder sb, Random random, int length) {
+		for (int i = 0; i < length; i++) {
+			sb.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+		}
+	}
+
+}
@@ -16,6 +16,12 @@ package cop5556fa17;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -41,6 +47,17 @@ public class ScannerTest {
 		}
 	}
 
+	/**
+	 * Creates the Scanner under test for the given input.  Overridden by
+	 * MappedScannerTest to run the same tests against memory mapped input.
+	 * 
+	 * @param input
+	 * @return
+	 */
+	Scanner newScanner(String input) {
+		return new Scanner(input);
+	}
+
 	/**
 	 *Retrieves the next token and checks that it is an EOF token. 
 	 *Also checks that this was the last token.
@@ -100,7 +117,7 @@ public class ScannerTest {
 	public void testEmpty() throws LexicalException {
 		String input = "";  //The input is the empty string.  This is legal
 		show(input);        //Display the input 
-		Scanner scanner = new Scanner(input).scan();  //Create a Scanner and initialize it
+		Scanner scanner = newScanner(input).scan();  //Create a Scanner and initialize it
 		show(scanner);   //Display the Scanner
 		checkNextIsEOF(scanner);  //Check that the only token is the EOF token.
 	}
@@ -122,7 +139,7 @@ public class ScannerTest {
 	@Test
 	public void testSemi() throws LexicalException {
 		String input = ";;\n ;; ";
-		Scanner scanner = new Scanner(input).scan();
+		Scanner scanner = newScanner(input).scan();
 		show(input);
 		show(scanner);
 		checkNext(scanner, SEMI, 0, 1, 1, 1);
@@ -154,7 +171,7 @@ public class ScannerTest {
 	@Test
 	public void failedTest1() throws LexicalException {
 		String input = "int:int0,\nint1;";
-		Scanner scanner = new Scanner(input).scan();
+		Scanner scanner = newScanner(input).scan();
 		show(input);
 		show(scanner);
 		checkNext(scanner, Kind.KW_int, 0, 3, 1, 1);
@@ -170,7 +187,7 @@ public class ScannerTest {
 	@Test
 	public void failedTest2() throws LexicalException {
 		String input = "/ /// Hoping this is /// still in comment. \r\n / //";
-		Scanner scanner = new Scanner(input).scan();
+		Scanner scanner = newScanner(input).scan();
 		show(input);
 		show(scanner);
 		checkNext(scanner, OP_DIV, 0, 1, 1, 1);
@@ -183,7 +200,7 @@ public class ScannerTest {
 		show(input);
 		thrown.expect(LexicalException.class);  //Tell JUnit to expect a LexicalException
 		try {
-			new Scanner(input).scan();
+			newScanner(input).scan();
 		} catch (LexicalException e) {  //
 			show(e);
 			assertEquals(13,e.getPos());
@@ -197,7 +214,7 @@ public class ScannerTest {
 		show(input);
 		thrown.expect(LexicalException.class);
 		try {
-			new Scanner(input).scan();
+			newScanner(input).scan();
 		} catch (LexicalException e) {  //
 			show(e);
 			throw e;
@@ -207,17 +224,31 @@ public class ScannerTest {
 	@Test
 	public void testSlash() throws LexicalException {
 		String input = "/";
-		Scanner scanner = new Scanner(input).scan();
+		Scanner scanner = newScanner(input).scan();
 		show(input);
 		show(scanner);
 		checkNext(scanner, OP_DIV, 0, 1, 1, 1);
 		checkNextIsEOF(scanner);
 	}
 	
+	@Test
+	public void divPositionTest() throws LexicalException {
+		String input = "k / b\r\n/b";
+		Scanner scanner = newScanner(input).scan();
+		show(input);
+		show(scanner);
+		checkNext(scanner, IDENTIFIER, 0, 1, 1, 1);
+		checkNext(scanner, OP_DIV, 2, 1, 1, 3);
+		checkNext(scanner, IDENTIFIER, 4, 1, 1, 5);
+		checkNext(scanner, OP_DIV, 7, 1, 2, 1);
+		checkNext(scanner, IDENTIFIER, 8, 1, 2, 2);
+		checkNext(scanner, EOF, 9, 0, 2, 3);
+	}
+
 	@Test
 	public void IdentifierTest() throws LexicalException {
 		String input = "abcde _q1_ q1 _1 1x";
-		Scanner scanner = new Scanner(input).scan();
+		Scanner scanner = newScanner(input).scan();
 		show(input);
 		show(scanner);
 		checkNext(scanner, IDENTIFIER, 0, 5, 1, 1);
@@ -232,7 +263,7 @@ public class ScannerTest {
 	@Test
 	public void testIdentifier() throws LexicalException {
 		String input = "abc def a";
-		Scanner scanner = new Scanner(input).scan();
+		Scanner scanner = newScanner(input).scan();
 		show(input);
 		show(scanner);
 		checkNext(scanner, IDENTIFIER, 0, 3, 1, 1);
@@ -244,7 +275,7 @@ public class ScannerTest {
 	@Test
 	public void BooleanLiteralTest() throws LexicalException {
 		String input = "true0";
-		Scanner scanner = new Scanner(input).scan();
+		Scanner scanner = newScanner(input).scan();
 		show(input);
 		show(scanner);
 		checkNext(scanner, IDENTIFIER, 0, 5, 1, 1);
@@ -257,7 +288,7 @@ public class ScannerTest {
 	@Test
 	public void testSeperator() throws LexicalException {
 		String input = "!=";
-		Scanner scanner = new Scanner(input).scan();
+		Scanner scanner = newScanner(input).scan();
 		show(input);
 		show(scanner);
 		checkNext(scanner,Kind.OP_NEQ,0,2,1,1);
@@ -267,7 +298,7 @@ public class ScannerTest {
 	@Test
 	public void DigitTest() throws LexicalException {
 		String input = "03210";
-		Scanner scanner = new Scanner(input).scan();
+		Scanner scanner = newScanner(input).scan();
 		show(input);
 		show(scanner);
 		checkNext(scanner, INTEGER_LITERAL, 0, 1, 1, 1);
@@ -281,30 +312,102 @@ public class ScannerTest {
 		show(input);
 		thrown.expect(LexicalException.class);
 		try {
-			new Scanner(input).scan();
+			newScanner(input).scan();
 		} catch (LexicalException e) {  //
 			show(e);
 			throw e;
 		}
 	}
 	
+	/**
+	 * The value of an INTEGER_LITERAL is computed when it is scanned, in both
+	 * modes, and overflow is reported at the end of the digits.
+	 */
+	@Test
+	public void intValTest() throws LexicalException {
+		String input = "0 7 1050 2147483647 2147483648";
+		for (boolean tableDriven : new boolean[] { false, true }) {
+			Scanner scanner = newScanner(input);
+			if (tableDriven) {
+				scanner.tableDriven();
+			}
+			assertEquals(0, scanner.nextToken().intVal());
+			assertEquals(7, scanner.nextToken().intVal());
+			assertEquals(1050, scanner.nextToken().intVal());
+			assertEquals(Integer.MAX_VALUE, scanner.nextToken().intVal());
+			try {
+				scanner.nextToken();
+				fail("expected LexicalException");
+			} catch (IllegalStateException e) {
+				LexicalException cause = (LexicalException) e.getCause();
+				assertEquals("Number:2147483648 too large", cause.getMessage());
+				assertEquals(input.length(), cause.getPos());
+			}
+		}
+		assertEquals(1234, new Scanner("1234").new Token(INTEGER_LITERAL, 0, 4, 1, 1).intVal());
+	}
+
+	/**
+	 * Creating a Token with the public constructor does not change the
+	 * Scanner: identifiers are not interned and literals are not parsed.
+	 */
+	@Test
+	public void tokenConstructorTest() throws LexicalException {
+		Scanner scanner = new Scanner("abc 99999999999 abc");
+		Scanner.Token ident = scanner.new Token(IDENTIFIER, 0, 3, 1, 1);
+		scanner.new Token(INTEGER_LITERAL, 4, 11, 1, 5);
+		assertEquals(0, scanner.symbols.size());
+		assertEquals(-1, ident.symbol());
+		assertEquals("abc", ident.getText());
+		Scanner other = new Scanner("abc 1").scan();
+		Scanner.Token scanned = other.new Token(IDENTIFIER, 0, 3, 1, 1);
+		assertEquals(other.tokenAt(0).symbol(), scanned.symbol());
+		assertEquals(other.tokenAt(0), scanned);
+	}
+
 	@Test
 	public void stringLiteralTest() throws LexicalException {
 		String input = "\"qwerty\"";
 		show(input);
-		Scanner scanner = new Scanner(input).scan();
+		Scanner scanner = newScanner(input).scan();
 		show(scanner);
 		checkNext(scanner, STRING_LITERAL,0,8,1,1);
 		checkNextIsEOF(scanner);
 		
 	}
+	/**
+	 * text returns the same characters as getText, as a view of the input when
+	 * the Scanner holds the whole input.
+	 */
+	@Test
+	public void textTest() throws LexicalException {
+		String input = "abc \"images/in.png\" \"a\\tb\" 42 <=";
+		String[] expected = { "abc", "images/in.png", "a\tb", "42", "<=" };
+		Scanner scanner = newScanner(input).scan();
+		for (int i = 0; i < expected.length; i++) {
+			Token t = scanner.nextToken();
+			CharSequence text = t.text();
+			assertEquals(expected[i], t.getText());
+			assertEquals(expected[i], text.toString());
+			assertEquals(expected[i].hashCode(), text.hashCode());
+			assertEquals(expected[i], new StringBuilder().append(text).toString());
+		}
+		TokenText path = (TokenText) new Scanner(input).scan().tokenAt(1).text();
+		assertTrue(path.contentEquals("images/in.png"));
+		assertEquals(new Scanner("\"images/in.png\"").scan().tokenAt(0).text(), path);
+		assertEquals("in", path.subSequence(7, 9).toString());
+		assertTrue(path.compareTo("images/in.png") == 0);
+		assertTrue(path.compareTo("images/out.png") < 0);
+		assertTrue(path.compareTo("images") > 0);
+	}
+
 	@Test
 	public void stringLiteralTestError() throws LexicalException {
 		String input = "\"qwer\\pty\"";
 		show(input);
 		thrown.expect(LexicalException.class);
 		try {
-			new Scanner(input).scan();
+			newScanner(input).scan();
 		} catch (LexicalException e) {  //
 			show(e);
 			assertEquals(6,e.getPos());
@@ -312,4 +415,537 @@ public class ScannerTest {
 		}
 		
 	}
+	@Test
+	public void tokenBufferAccessTest() throws LexicalException {
+		String input = "prog int k = 42;";
+		Scanner scanner = newScanner(input).scan();
+		show(input);
+		show(scanner);
+		assertEquals(7, scanner.size());
+		assertEquals(KW_int, scanner.kindAt(1));
+		assertEquals(scanner.new Token(INTEGER_LITERAL, 13, 2, 1, 14), scanner.tokenAt(4));
+		assertEquals(42, scanner.tokenAt(4).intVal());
+		assertEquals(EOF, scanner.kindAt(scanner.size() - 1));
+		checkNext(scanner, IDENTIFIER, 0, 4, 1, 1);
+	}
+	@Test
+	public void keywordTest() throws LexicalException {
+		for (String text : Scanner.kindMap.keySet()) {
+			Scanner scanner = newScanner(text).scan();
+			check(scanner, Scanner.kindMap.get(text), text.length());
+			checkNextIsEOF(scanner);
+		}
+		String input = "true false cart_z DEF_ DEF_XY ints tru falsey SCREEN screen polar_r polar_ax";
+		Scanner scanner = newScanner(input).scan();
+		show(input);
+		show(scanner);
+		check(scanner, BOOLEAN_LITERAL, 4);
+		check(scanner, BOOLEAN_LITERAL, 5);
+		check(scanner, IDENTIFIER, 6);
+		check(scanner, IDENTIFIER, 4);
+		check(scanner, IDENTIFIER, 6);
+		check(scanner, IDENTIFIER, 4);
+		check(scanner, IDENTIFIER, 3);
+		check(scanner, IDENTIFIER, 6);
+		check(scanner, KW_SCREEN, 6);
+		check(scanner, IDENTIFIER, 6);
+		check(scanner, KW_polar_r, 7);
+		check(scanner, IDENTIFIER, 8);
+		checkNextIsEOF(scanner);
+	}
+
+	/**
+	 * Reader that returns at most one character per read, so that a
+	 * streaming Scanner has to refill its window for every character.
+	 */
+	static class TrickleReader extends StringReader {
+		TrickleReader(String s) {
+			super(s);
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			return super.read(cbuf, off, Math.min(len, 1));
+		}
+	}
+
+	/**
+	 * Checks that the tokens from a streaming Scanner reading input have the
+	 * same kind, position, length, line, position in line and text as those
+	 * from a Scanner created from the input string.
+	 */
+	void checkSameTokens(String input, Reader reader) throws LexicalException {
+		Scanner expected = new Scanner(input).scan();
+		Scanner streaming = new Scanner(reader);
+		while (expected.hasTokens()) {
+			assertTrue(streaming.hasTokens());
+			Token e = expected.nextToken();
+			Token t = streaming.nextToken();
+			assertEquals(e.toString(), t.toString());
+			assertEquals(e.getText(), t.getText());
+		}
+		assertFalse(streaming.hasTokens());
+	}
+
+	@Test
+	public void streamingTest() throws LexicalException {
+		String input = "prog int k = 42;// comment\r\n image[x,y] i <- \"a\\tb\";\rk = k <= 0 ? k -> SCREEN : k ** 2 != 1;\n";
+		show(input);
+		checkSameTokens(input, new StringReader(input));
+		checkSameTokens(input, new TrickleReader(input));
+	}
+
+	@Test
+	public void streamingWindowTest() throws LexicalException {
+		StringBuilder sb = new StringBuilder("prog\n");
+		for (int i = 0; i < 20000; i++) {
+			sb.append("int v").append(i).append(" = ").append(i).append(" + 1; // declare v").append(i).append('\n');
+		}
+		String input = sb.toString();
+		checkSameTokens(input, new StringReader(input));
+		Scanner scanner = new Scanner(new StringReader(input));
+		int n = 0;
+		while (scanner.hasTokens()) {
+			scanner.nextToken();
+			n++;
+			assertTrue(scanner.chars.length <= Scanner.WINDOW_SIZE);
+			assertTrue(scanner.tokens.kinds.length <= TokenBuffer.INITIAL_CAPACITY);
+			assertTrue(scanner.lines.starts.length <= LineIndex.INITIAL_CAPACITY);
+		}
+		assertEquals(new Scanner(input).scan().size(), n);
+	}
+
+	/**
+	 * Comments and runs of blanks are skipped several characters at a time.
+	 * Checks the skipped lengths around the groups of eight, and the tokens
+	 * after long comments and blanks, also across the window of a streaming
+	 * Scanner.
+	 */
+	@Test
+	public void skipTest() throws LexicalException {
+		for (int n = 0; n < 20; n++) {
+			for (String end : new String[] { "\n", "\r", "\0" }) {
+				char[] comment = ("//" + repeat("x\t", n) + end + "x").toCharArray();
+				assertEquals(2 + 2 * n, Scanner.skipComment(comment, 2, comment.length - 1));
+				assertEquals(Math.min(3, 2 + 2 * n), Scanner.skipComment(comment, 2, 3));
+			}
+			char[] blanks = (repeat(" ", n) + "\t \f" + repeat(" ", n) + "x").toCharArray();
+			assertEquals(2 * n + 3, Scanner.skipBlanks(blanks, 0, blanks.length));
+			assertEquals(n, Scanner.skipBlanks(blanks, 0, n));
+		}
+		String input = "prog\n" + repeat(" ", 50000) + "// " + repeat("comment ", 10000) + "\n" + repeat(" \t", 5000)
+				+ "int x = 1; //" + repeat("\f", 5000);
+		checkSameTokens(input, new StringReader(input));
+		checkSameAsTableDriven(input);
+	}
+
+	private static String repeat(String s, int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void streamingErrorTest() {
+		String input = "prog int k = 99999999999;";
+		show(input);
+		Scanner scanner = new Scanner(new StringReader(input));
+		thrown.expect(IllegalStateException.class);
+		try {
+			while (scanner.hasTokens()) {
+				scanner.nextToken();
+			}
+		} catch (IllegalStateException e) {
+			show(e);
+			assertEquals(LexicalException.class, e.getCause().getClass());
+			assertEquals(24, ((LexicalException) e.getCause()).getPos());
+			throw e;
+		}
+	}
+	/**
+	 * Returns the tokens produced by scanner, or the message and position of
+	 * the LexicalException it reports.
+	 */
+	private String scanResult(Scanner scanner) {
+		try {
+			return scanner.scan().toString();
+		} catch (LexicalException e) {
+			return e.getMessage() + " at " + e.getPos();
+		}
+	}
+
+	/**
+	 * Checks that the table driven lexer and the hand written one produce the
+	 * same tokens, or report the same error, for input.
+	 */
+	void checkSameAsTableDriven(String input) {
+		assertEquals(input, scanResult(newScanner(input)), scanResult(newScanner(input).tableDriven()));
+	}
+
+	static final String[] FRAGMENTS = { "prog", "int", "boolean", "image", "url", "file", "x", "Y", "DEF_X", "SCREEN",
+			"cart_x", "polar_r", "sin", "atan", "true", "false", "abc", "_q1_", "$x", "k42", "0", "7", "123",
+			"2147483647", "\"abc\"", "\"a\\tb\\\"\"", "//c //x", "/", "=", "==", "!", "!=", ">", ">=", "<", "<=", "<-",
+			"-", "->", "*", "**", "?", ":", "&", "|", "+", "%", "@", "(", ")", "[", "]", ";", ",", " ", "  ", "\t",
+			"\f", "\n", "\r", "\r\n" };
+
+	static final String[] INVALID_FRAGMENTS = { "2147483648", "99999999999", "\"\\q\"", "\"open", "\"a\nb\"", "#",
+			"~", "\\", "\0", "\u00e9", "\u0661" };
+
+	static final String RANDOM_CHARS = "abzAZ_$019 \t\f\n\r\"\\/=!<>-*?:&|+%@()[];,#~^`'.\0\u00e9\u00a0\u0661";
+
+	@Test
+	public void tableDrivenTest() {
+		String[] inputs = { "", ";;\n ;; ", "int:int0,\nint1;", "/ /// Hoping this is /// still in comment. \r\n / //",
+				"\" greetings  ", "\0", "/", "abcde _q1_ q1 _1 1x", "abc def a", "true0", "!=", "03210", "99999999999",
+				"\"qwerty\"", "\"qwer\\pty\"", "prog int k = 42;",
+				"true false cart_z DEF_ DEF_XY ints tru falsey SCREEN screen polar_r polar_ax",
+				"prog int k = 42;// comment\r\n image[x,y] i <- \"a\\tb\";\rk = k <= 0 ? k -> SCREEN : k ** 2 != 1;\n" };
+		for (String input : inputs) {
+			checkSameAsTableDriven(input);
+		}
+		for (String text : Scanner.kindMap.keySet()) {
+			checkSameAsTableDriven(text);
+		}
+		Random random = new Random(5556);
+		for (int i = 0; i < 300; i++) {
+			StringBuilder sb = new StringBuilder();
+			int n = random.nextInt(30);
+			for (int j = 0; j < n; j++) {
+				// mostly valid fragments, so that errors do not always come first
+				if (random.nextInt(40) == 0) {
+					sb.append(INVALID_FRAGMENTS[random.nextInt(INVALID_FRAGMENTS.length)]);
+				} else {
+					sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+				}
+				if (random.nextBoolean()) {
+					sb.append(' ');
+				}
+			}
+			checkSameAsTableDriven(sb.toString());
+		}
+		for (int i = 0; i < 300; i++) {
+			StringBuilder sb = new StringBuilder();
+			int n = random.nextInt(20);
+			for (int j = 0; j < n; j++) {
+				sb.append(RANDOM_CHARS.charAt(random.nextInt(RANDOM_CHARS.length())));
+			}
+			checkSameAsTableDriven(sb.toString());
+		}
+	}
+
+	/**
+	 * The benchmark corpora are valid input, and scan the same in both modes.
+	 */
+	@Test
+	public void corpusTest() {
+		for (String name : ScannerCorpus.NAMES) {
+			String input = ScannerCorpus.generate(name, 20000);
+			assertTrue(name, input.length() >= 20000);
+			assertEquals(input, ScannerCorpus.generate(name, 20000));
+			checkSameAsTableDriven(input);
+			String result = scanResult(newScanner(input));
+			assertTrue(name + ": " + result, result.startsWith("Tokens:"));
+		}
+	}
+
+	@Test
+	public void nonAsciiTest() throws LexicalException {
+		String input = "abc \u00e9";
+		show(input);
+		thrown.expect(LexicalException.class);
+		try {
+			newScanner(input).scan();
+		} catch (LexicalException e) {
+			show(e);
+			assertEquals(4, e.getPos());
+			throw e;
+		}
+	}
+	/**
+	 * Returns the tokens produced by scanParallel, or the message and
+	 * position of the LexicalException it reports.
+	 */
+	private String parallelScanResult(Scanner scanner, ForkJoinPool pool, int chunkSize) {
+		try {
+			return scanner.scanParallel(pool, chunkSize).toString();
+		} catch (LexicalException e) {
+			return e.getMessage() + " at " + e.getPos();
+		}
+	}
+
+	/**
+	 * Checks that scanParallel with small chunks produces the same tokens, or
+	 * reports the same error, as scan.
+	 */
+	void checkSameAsParallel(String input, ForkJoinPool pool) {
+		String expected = scanResult(newScanner(input));
+		for (int chunkSize : new int[] { 1, 7, 64 }) {
+			assertEquals(expected, parallelScanResult(newScanner(input), pool, chunkSize));
+			assertEquals(expected, parallelScanResult(newScanner(input).tableDriven(), pool, chunkSize));
+		}
+	}
+
+	@Test
+	public void parallelTest() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			StringBuilder sb = new StringBuilder("prog\n");
+			for (int i = 0; i < 200; i++) {
+				sb.append("int v").append(i).append(" = ").append(i).append(" / 2;// v").append(i)
+						.append(i % 3 == 0 ? "\r\n" : i % 3 == 1 ? "\r" : "\n");
+				sb.append(" image[x,y] i").append(i).append(" <- \"a\\tb\";\n\n");
+			}
+			String input = sb.toString();
+			checkSameAsParallel(input, pool);
+			checkSameAsParallel(input.replace("i50 ", "i50 #"), pool);
+			checkSameAsParallel(input.replace("v150 ", "v150 \0").replace("i50 ", "i50 ~"), pool);
+			checkSameAsParallel(input.replace("\"a\\tb\";\n\n", "\"a\\tb\n"), pool);
+			checkSameAsParallel("", pool);
+			checkSameAsParallel("\n\n\r\r\n", pool);
+			checkSameAsParallel("x\0", pool);
+			checkSameAsParallel("x\n\0\n", pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+	/**
+	 * Returns the tokens produced by editing scanner, or the message and
+	 * position of the LexicalException reported.
+	 */
+	private String editResult(Scanner scanner, int offset, int deleted, String inserted) {
+		try {
+			return scanner.edit(offset, deleted, inserted).toString();
+		} catch (LexicalException e) {
+			return e.getMessage() + " at " + e.getPos();
+		}
+	}
+
+	@Test
+	public void editTest() throws LexicalException {
+		String input = "prog int k = 42;// comment\r\n image[x,y] i <- \"a\\tb\";\rk = k <= 0 ? k -> SCREEN : k ** 2 != 1;\n";
+		Scanner scanner = new Scanner(input).scan();
+		Scanner edited = scanner.edit(13, 2, "7 + 1");
+		show(edited);
+		assertEquals(new Scanner("prog int k = 7 + 1;// comment\r\n image[x,y] i <- \"a\\tb\";\rk = k <= 0 ? k -> SCREEN : k ** 2 != 1;\n").scan().toString(),
+				edited.toString());
+		// join and split \r\n
+		assertEquals(new Scanner(input.replace("\r\n", "\r\r\n")).scan().toString(), scanner.edit(27, 0, "\r").toString());
+		assertEquals(new Scanner(input.replace(";\rk", ";\r\nk")).scan().toString(), scanner.edit(53, 0, "\n").toString());
+		assertEquals(new Scanner(input.replace("\r\n", "\n")).scan().toString(), scanner.edit(26, 1, "").toString());
+	}
+
+	@Test
+	public void randomEditTest() throws LexicalException {
+		Random random = new Random(5556);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 400; i++) {
+			sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]).append(' ');
+		}
+		String input = sb.toString();
+		Scanner scanner = new Scanner(input).scan();
+		for (int i = 0; i < 500; i++) {
+			int offset = random.nextInt(input.length() + 1);
+			int deleted = random.nextInt(Math.min(20, input.length() - offset) + 1);
+			StringBuilder inserted = new StringBuilder();
+			int n = random.nextInt(3);
+			for (int j = 0; j < n; j++) {
+				if (random.nextInt(10) == 0) {
+					inserted.append(INVALID_FRAGMENTS[random.nextInt(INVALID_FRAGMENTS.length)]);
+				} else {
+					inserted.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+				}
+			}
+			String editedInput = input.substring(0, offset) + inserted + input.substring(offset + deleted);
+			String expected = scanResult(new Scanner(editedInput));
+			assertEquals(editedInput, expected, editResult(scanner, offset, deleted, inserted.toString()));
+			if (!expected.startsWith("Tokens:")) {
+				continue;
+			}
+			// edit the edited Scanner next
+			input = editedInput;
+			scanner = scanner.edit(offset, deleted, inserted.toString());
+		}
+	}
+
+	/**
+	 * A long chain of edits, which makes the pieces of the edited Scanners
+	 * be merged, gives the same tokens and texts as scanning the edited
+	 * input, and leaves the Scanners it was edited from unchanged.
+	 */
+	@Test
+	public void editChainTest() throws LexicalException {
+		StringBuilder sb = new StringBuilder("prog\n");
+		for (int i = 0; i < 1000; i++) {
+			sb.append("int k").append(i).append(" = \"a\\tb\" + ").append(i).append(";\r\n");
+		}
+		String input = sb.toString();
+		Scanner first = new Scanner(input).scan();
+		String firstTokens = first.toString();
+		Random random = new Random(5556);
+		Scanner scanner = first;
+		for (int i = 0; i < 3 * PieceTable.MAX_PIECES; i++) {
+			int offset = input.indexOf(" + ", random.nextInt(input.length() - 10)) + 1;
+			if (offset == 0) {
+				continue;
+			}
+			String inserted = i % 10 == 0 ? "+ 2\n" : "*";
+			input = input.substring(0, offset) + inserted + input.substring(offset + 1);
+			scanner = scanner.edit(offset, 1, inserted);
+		}
+		Scanner expected = new Scanner(input).scan();
+		assertEquals(expected.toString(), scanner.toString());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.tokenAt(i).getText(), scanner.tokenAt(i).getText());
+			assertEquals(expected.tokenAt(i).text().toString(), scanner.tokenAt(i).text().toString());
+			assertEquals(expected.tokenIndex(expected.tokenAt(i).pos), scanner.tokenIndex(expected.tokenAt(i).pos));
+		}
+		assertEquals(firstTokens, first.toString());
+	}
+
+	/**
+	 * Every occurrence of an identifier has the same symbol id and the same
+	 * String, also across the chunks of a parallel scan and after an edit.
+	 */
+	@Test
+	public void symbolTest() throws LexicalException {
+		String input = "int count = 0;\nint total = count + count;\ntotal = total * count;";
+		Scanner scanner = new Scanner(input).scan();
+		Token count = scanner.tokenAt(1);
+		Token total = scanner.tokenAt(6);
+		assertEquals("count", count.getText());
+		assertEquals("total", total.getText());
+		assertNotEquals(count.symbol(), total.symbol());
+		assertEquals(count.symbol(), scanner.tokenAt(8).symbol());
+		assertSame(count.getText(), scanner.tokenAt(8).getText());
+		Scanner parallel = new Scanner(input).scanParallel(ForkJoinPool.commonPool(), 7);
+		for (int i = 0; i < scanner.tokens.size; i++) {
+			if (scanner.tokenAt(i).kind == IDENTIFIER) {
+				assertEquals(scanner.tokenAt(i).symbol(), parallel.tokenAt(i).symbol());
+			}
+		}
+		Scanner edited = scanner.edit(input.lastIndexOf("count;"), 0, "step + ");
+		Token step = edited.tokenAt(edited.size() - 5);
+		assertEquals("step", step.getText());
+		assertNotEquals(count.symbol(), step.symbol());
+		assertEquals(count.symbol(), edited.tokenAt(edited.size() - 3).symbol());
+	}
+
+	/**
+	 * A reset Scanner gives the same result as a new Scanner for the same
+	 * input, for inputs that grow and shrink.
+	 */
+	@Test
+	public void resetTest() throws Exception {
+		Random random = new Random(5556);
+		Scanner scanner = new Scanner("");
+		for (int i = 0; i < 200; i++) {
+			StringBuilder sb = new StringBuilder();
+			int n = random.nextInt(i % 10 == 0 ? 2000 : 20);
+			for (int j = 0; j < n; j++) {
+				sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+				if (random.nextInt(50) == 0) {
+					sb.append(INVALID_FRAGMENTS[random.nextInt(INVALID_FRAGMENTS.length)]);
+				}
+			}
+			String input = sb.toString();
+			CharSequence text = i % 2 == 0 ? input : sb;
+			assertEquals(input, scanResult(new Scanner(input)), scanResult(scanner.reset(text)));
+			if (i % 3 == 0) {
+				assertEquals(input, scanResult(new Scanner(input).tableDriven()),
+						scanResult(scanner.reset(text).tableDriven()));
+			}
+		}
+		String input = "prog int k = 1;\nk -> SCREEN;";
+		assertEquals(new Scanner(input).scan().toString(), scanner.reset(input).scan().toString());
+		assertEquals(new Scanner(input).scan().edit(5, 3, "boolean").toString(),
+				scanner.reset(input).scan().edit(5, 3, "boolean").toString());
+		assertEquals(new Scanner(input).scanParallel(ForkJoinPool.commonPool(), 4).toString(),
+				scanner.reset(input).scanParallel(ForkJoinPool.commonPool(), 4).toString());
+		assertEquals(new Parser(new Scanner(input).scan()).parse().toString(),
+				new Parser(Scanner.forCurrentThread(input).scan()).parse().toString());
+		assertSame(Scanner.forCurrentThread(""), Scanner.forCurrentThread(input));
+	}
+
+	/**
+	 * A recovering Scanner reports all errors and covers each with an ERROR
+	 * token.
+	 */
+	@Test
+	public void recoveryTest() throws LexicalException {
+		String input = "int k = 99999999999 # 1;\n\"open\nurl u = \"a\\qb\" ~;";
+		for (boolean tableDriven : new boolean[] { false, true }) {
+			Scanner scanner = newScanner(input).recovering();
+			if (tableDriven) {
+				scanner.tableDriven();
+			}
+			scanner.scan();
+			show(scanner);
+			checkNext(scanner, KW_int, 0, 3, 1, 1);
+			checkNext(scanner, IDENTIFIER, 4, 1, 1, 5);
+			checkNext(scanner, OP_ASSIGN, 6, 1, 1, 7);
+			checkNext(scanner, ERROR, 8, 11, 1, 9);
+			checkNext(scanner, ERROR, 20, 1, 1, 21);
+			checkNext(scanner, INTEGER_LITERAL, 22, 1, 1, 23);
+			checkNext(scanner, SEMI, 23, 1, 1, 24);
+			checkNext(scanner, ERROR, 25, 5, 2, 1);
+			checkNext(scanner, KW_url, 31, 3, 3, 1);
+			checkNext(scanner, IDENTIFIER, 35, 1, 3, 5);
+			checkNext(scanner, OP_ASSIGN, 37, 1, 3, 7);
+			checkNext(scanner, ERROR, 39, 6, 3, 9);
+			checkNext(scanner, ERROR, 46, 1, 3, 16);
+			checkNext(scanner, SEMI, 47, 1, 3, 17);
+			checkNextIsEOF(scanner);
+			String[] messages = { "Number:99999999999 too large", "Invalid token",
+					"line seperator occured before line termination", "Invalid escape sequence", "Invalid token" };
+			int[] positions = { 19, 20, 30, 42, 46 };
+			assertEquals(messages.length, scanner.errors().size());
+			for (int i = 0; i < messages.length; i++) {
+				assertEquals(messages[i], scanner.errors().get(i).getMessage());
+				assertEquals(positions[i], scanner.errors().get(i).getPos());
+			}
+		}
+		assertTrue(newScanner(input).errors().isEmpty());
+	}
+
+	/**
+	 * On random inputs, a recovering Scanner reports the error that scan
+	 * throws first, produces the same tokens when there is no error, and
+	 * gives the same result in both modes.
+	 */
+	@Test
+	public void randomRecoveryTest() throws LexicalException {
+		Random random = new Random(5556);
+		for (int i = 0; i < 300; i++) {
+			StringBuilder sb = new StringBuilder();
+			int n = random.nextInt(40);
+			for (int j = 0; j < n; j++) {
+				if (random.nextInt(8) == 0) {
+					sb.append(INVALID_FRAGMENTS[random.nextInt(INVALID_FRAGMENTS.length)]);
+				} else {
+					sb.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+				}
+			}
+			String input = sb.toString();
+			Scanner recovered = newScanner(input).recovering().scan();
+			Scanner tables = newScanner(input).recovering().tableDriven().scan();
+			assertEquals(input, recovered.toString(), tables.toString());
+			assertEquals(input, recovered.errors().toString(), tables.errors().toString());
+			String expected = scanResult(newScanner(input));
+			if (recovered.errors().isEmpty()) {
+				assertEquals(input, expected, recovered.toString());
+			} else {
+				LexicalException first = recovered.errors().get(0);
+				assertEquals(input, expected, first.getMessage() + " at " + first.getPos());
+			}
+		}
+		// each line has an invalid character, an invalid escape and an unterminated string
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			sb.append("#\"\\q\n");
+		}
+		Scanner scanner = newScanner(sb.toString()).recovering().scan();
+		assertEquals(300000, scanner.errors().size());
+	}
 }
@@ -0,0 +1,174 @@
+package cop5556fa17;
+
+import java.util.Arrays;
+
+/**
+ * Pool of the distinct identifiers of a compilation.
+ *
+ * The Scanner interns each identifier as it is scanned, giving it an int id.
+ * Ids are assigned in order from 0, and every occurrence of an identifier gets
+ * the same id and shares the same canonical String, which is only created the
+ * first time the identifier is seen.  Later phases can then use the id, for
+ * example as an array index, instead of hashing the name.
+ *
+ * Identifiers are found with an open addressing hash table over the
+ * characters, so looking up an identifier that is already in the pool does
+ * not allocate.
+ *
+ */
+final class SymbolPool {
+
+	static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Hash table of ids + 1, with 0 for an empty slot.  Its length is a power
+	 * of two at least twice the number of symbols.
+	 */
+	private int[] table = new int[2 * INITIAL_CAPACITY];
+
+	/**
+	 * names[id] is the canonical String of the symbol with that id
+	 */
+	private String[] names = new String[INITIAL_CAPACITY];
+
+	/**
+	 * hashes[id] is the hash of names[id], as computed by String.hashCode
+	 */
+	private int[] hashes = new int[INITIAL_CAPACITY];
+
+	private int size;
+
+	/**
+	 * Returns the id of the identifier formed by the characters of chars from
+	 * start to start + length, adding it to the pool if necessary.
+	 *
+	 * @param chars
+	 * @param start
+	 * @param length
+	 * @return
+	 */
+	int intern(char[] chars, int start, int length) {
+		int hash = 0;
+		for (int i = start; i < start + length; i++) {
+			hash = 31 * hash + chars[i];
+		}
+		int mask = table.length - 1;
+		for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+			int entry = table[slot];
+			if (entry == 0) {
+				return add(new String(chars, start, length), hash, slot);
+			}
+			int id = entry - 1;
+			if (hashes[id] == hash && matches(names[id], chars, start, length)) {
+				return id;
+			}
+		}
+	}
+
+	/**
+	 * Returns the id of name, adding it to the pool if necessary.
+	 */
+	int intern(String name) {
+		int hash = name.hashCode();
+		int mask = table.length - 1;
+		for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+			int entry = table[slot];
+			if (entry == 0) {
+				return add(name, hash, slot);
+			}
+			int id = entry - 1;
+			if (hashes[id] == hash && names[id].equals(name)) {
+				return id;
+			}
+		}
+	}
+
+	/**
+	 * Returns the id of name, or -1 if it is not in the pool.
+	 */
+	int find(String name) {
+		int hash = name.hashCode();
+		int mask = table.length - 1;
+		for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+			int entry = table[slot];
+			if (entry == 0) {
+				return -1;
+			}
+			int id = entry - 1;
+			if (hashes[id] == hash && names[id].equals(name)) {
+				return id;
+			}
+		}
+	}
+
+	/**
+	 * Returns the canonical String of the symbol with the given id.
+	 */
+	String name(int id) {
+		return names[id];
+	}
+
+	/**
+	 * Returns the number of symbols in the pool.  Ids range from 0 to size() -
+	 * 1.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all symbols, keeping the arrays for reuse.
+	 */
+	void clear() {
+		Arrays.fill(table, 0);
+		Arrays.fill(names, 0, size, null);
+		size = 0;
+	}
+
+	private int add(String name, int hash, int slot) {
+		if (size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+		}
+		int id = size++;
+		names[id] = name;
+		hashes[id] = hash;
+		table[slot] = id + 1;
+		if (2 * size > table.length) {
+			rehash();
+		}
+		return id;
+	}
+
+	private void rehash() {
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for (int id = 0; id < size; id++) {
+			int slot = mix(hashes[id]) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = id + 1;
+		}
+	}
+
+	private static boolean matches(String name, char[] chars, int start, int length) {
+		if (name.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (name.charAt(i) != chars[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Folds the high bits of hash into the low bits, which select the slot.
+	 */
+	private static int mix(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+}
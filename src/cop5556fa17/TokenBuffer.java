@@ -0,0 +1,198 @@
+package cop5556fa17;
+
+import java.util.Arrays;
+
+import cop5556fa17.Scanner.Kind;
+
+/**
+ * Struct-of-arrays store for the tokens produced by the Scanner.
+ *
+ * Instead of one Token object per token, the kind ordinal, position, length
+ * and value of token i are kept at index i of four parallel int arrays. Token
+ * objects are only created on demand by Scanner.tokenAt(int), which gets the
+ * line and position in line of the token from the LineIndex of the Scanner.
+ *
+ */
+final class TokenBuffer {
+
+	static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Cached result of Kind.values(), used to map stored ordinals back to kinds
+	 * without cloning the values array on every lookup.
+	 */
+	static final Kind[] KINDS = Kind.values();
+
+	int[] kinds;
+	int[] pos;
+	int[] length;
+
+	/**
+	 * Value of the token, depending on its kind: the id in the SymbolPool of
+	 * the Scanner for an IDENTIFIER, the value of an INTEGER_LITERAL, 0
+	 * otherwise.
+	 */
+	int[] values;
+
+	/**
+	 * number of tokens in the buffer
+	 */
+	int size;
+
+	/**
+	 * Index of the token stored at index 0 of the arrays, that is, the number
+	 * of tokens that have been dropped with discard.
+	 */
+	int first;
+
+	TokenBuffer() {
+		this(INITIAL_CAPACITY);
+	}
+
+	TokenBuffer(int capacity) {
+		kinds = new int[capacity];
+		pos = new int[capacity];
+		length = new int[capacity];
+		values = new int[capacity];
+	}
+
+	/**
+	 * Appends a token to the end of the buffer, growing the arrays if
+	 * necessary.
+	 */
+	void add(Kind kind, int pos, int length) {
+		add(kind, pos, length, 0);
+	}
+
+	/**
+	 * Appends a token with the given value to the end of the buffer.
+	 */
+	void add(Kind kind, int pos, int length, int value) {
+		if (size == kinds.length) {
+			grow();
+		}
+		this.kinds[size] = kind.ordinal();
+		this.pos[size] = pos;
+		this.length[size] = length;
+		this.values[size] = value;
+		size++;
+	}
+
+	private void grow() {
+		ensureCapacity(Math.max(INITIAL_CAPACITY, kinds.length * 2));
+	}
+
+	/**
+	 * Grows the arrays, if necessary, so that they can hold at least the given
+	 * number of tokens.
+	 */
+	void ensureCapacity(int capacity) {
+		if (capacity <= kinds.length) {
+			return;
+		}
+		kinds = Arrays.copyOf(kinds, capacity);
+		pos = Arrays.copyOf(pos, capacity);
+		length = Arrays.copyOf(length, capacity);
+		values = Arrays.copyOf(values, capacity);
+	}
+
+	/**
+	 * Appends the tokens from index from to index to of other to the end of
+	 * this buffer, adding posOffset to their positions.
+	 * 
+	 * @param other
+	 * @param from
+	 * @param to
+	 * @param posOffset
+	 */
+	void append(TokenBuffer other, int from, int to, int posOffset) {
+		int n = to - from;
+		ensureCapacity(size + n);
+		System.arraycopy(other.kinds, from, kinds, size, n);
+		System.arraycopy(other.length, from, length, size, n);
+		System.arraycopy(other.values, from, values, size, n);
+		for (int i = 0; i < n; i++) {
+			pos[size + i] = other.pos[from + i] + posOffset;
+		}
+		size += n;
+	}
+
+	/**
+	 * Returns the index of the first token in the buffer whose position is at
+	 * least pos, or size if there is none.
+	 */
+	int search(int pos) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (this.pos[mid] < pos) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Shrinks the arrays to the number of tokens in the buffer. Called once
+	 * scanning is complete so that the retained size is exactly four ints per
+	 * token.
+	 */
+	void trimToSize() {
+		if (size < kinds.length) {
+			kinds = Arrays.copyOf(kinds, size);
+			pos = Arrays.copyOf(pos, size);
+			length = Arrays.copyOf(length, size);
+			values = Arrays.copyOf(values, size);
+		}
+	}
+
+	/**
+	 * Removes all tokens, keeping the arrays for reuse.
+	 */
+	void clear() {
+		size = 0;
+		first = 0;
+	}
+
+	/**
+	 * Drops the tokens with index less than the given index from the buffer.
+	 * The remaining tokens are moved to the front of the arrays.
+	 * 
+	 * @param index
+	 */
+	void discard(int index) {
+		int n = Math.min(index - first, size);
+		if (n <= 0) {
+			return;
+		}
+		size -= n;
+		System.arraycopy(kinds, n, kinds, 0, size);
+		System.arraycopy(pos, n, pos, 0, size);
+		System.arraycopy(length, n, length, 0, size);
+		System.arraycopy(values, n, values, 0, size);
+		first += n;
+	}
+
+	int size() {
+		return size;
+	}
+
+	Kind kind(int index) {
+		return KINDS[kinds[index]];
+	}
+
+	/**
+	 * Number of bytes held by the arrays of this buffer, including the array
+	 * headers but not the buffer object itself. Used by the memory benchmark.
+	 *
+	 * @return
+	 */
+	long arrayBytes() {
+		final long arrayHeader = 16;
+		return 4 * (arrayHeader + 4L * kinds.length);
+	}
+
+}
@@ -0,0 +1,423 @@
+package cop5556fa17;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import cop5556fa17.Scanner.Kind;
+import cop5556fa17.Scanner.LexicalException;
+
+/**
+ * Directory of the scanned tokens of source files, so that a file that has
+ * not changed since it was last scanned is loaded with a single read instead
+ * of being scanned again.
+ *
+ * An entry is named by the SHA-256 hash of VERSION and the bytes of the
+ * source, so a changed file, or a change to the Scanner or to the encoding
+ * that comes with a new VERSION, simply misses the cache.  An entry holds
+ * the tokens (kinds, positions, lengths and values), the line starts and the
+ * names of the symbol pool, as variable length ints.  Entries that cannot be
+ * decoded, including those with ints out of range, are deleted and the file
+ * is scanned again.  Files with lexical errors are not cached.
+ *
+ * The directory is kept under a maximum size by deleting the least recently
+ * used entries after each new entry is written.  An entry is used when it is
+ * written or loaded, which sets its modification time.
+ */
+final class TokenCache {
+
+	/**
+	 * Version of the Scanner and of the encoding of entries.  Must be
+	 * incremented whenever either changes the tokens stored for an input.
+	 */
+	static final int VERSION = 1;
+
+	static final String SUFFIX = ".tokens";
+
+	/**
+	 * first int of every entry
+	 */
+	private static final int MAGIC = 0x546f6b73;
+
+	private final Path dir;
+
+	private final long maxBytes;
+
+	/**
+	 * Creates a cache in the given directory, which is created if necessary,
+	 * holding at most maxBytes of entries.
+	 *
+	 * @param dir
+	 * @param maxBytes
+	 * @throws IOException
+	 */
+	TokenCache(Path dir, long maxBytes) throws IOException {
+		this.dir = Files.createDirectories(dir);
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns a scanned Scanner for the source file with the given path,
+	 * loading its tokens from the cache if the file has been scanned before,
+	 * and otherwise scanning it and adding its tokens to the cache.  The
+	 * returned Scanner is created from the bytes of the file, see
+	 * Scanner(byte[]).
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 * @throws LexicalException
+	 */
+	Scanner scan(Path file) throws IOException, LexicalException {
+		byte[] source = Files.readAllBytes(file);
+		Path entry = entry(source);
+		byte[] encoded = read(entry);
+		if (encoded != null) {
+			Scanner scanner = decode(source, encoded);
+			if (scanner != null) {
+				touch(entry);
+				return scanner;
+			}
+			Files.deleteIfExists(entry);
+		}
+		Scanner scanner = new Scanner(source).scan();
+		write(entry, encode(scanner));
+		evict();
+		return scanner;
+	}
+
+	/**
+	 * Removes the entry for the current contents of the given file, if any.
+	 */
+	void invalidate(Path file) throws IOException {
+		Files.deleteIfExists(entry(Files.readAllBytes(file)));
+	}
+
+	/**
+	 * Removes all entries.
+	 */
+	void clear() throws IOException {
+		for (Path entry : entries()) {
+			Files.deleteIfExists(entry);
+		}
+	}
+
+	/**
+	 * Returns the total size of the entries.
+	 */
+	long size() throws IOException {
+		long size = 0;
+		for (Path entry : entries()) {
+			size += sizeOf(entry);
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the path of the entry for the given source bytes.
+	 */
+	Path entry(byte[] source) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every Java platform has SHA-256
+		}
+		digest.update(ByteBuffer.allocate(4).putInt(VERSION).array());
+		byte[] hash = digest.digest(source);
+		StringBuilder name = new StringBuilder(2 * hash.length + SUFFIX.length());
+		for (byte b : hash) {
+			name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return dir.resolve(name.append(SUFFIX).toString());
+	}
+
+	/**
+	 * Returns the encoding of the tokens, line starts and symbols of a
+	 * scanned Scanner.
+	 */
+	static byte[] encode(Scanner scanner) {
+		TokenBuffer tokens = scanner.tokens;
+		LineIndex lines = scanner.lines;
+		SymbolPool symbols = scanner.symbols;
+		Encoder out = new Encoder(16 + 8 * tokens.size + 2 * lines.size);
+		out.writeInt(MAGIC);
+		out.writeVarInt(tokens.size);
+		int previous = 0;
+		for (int i = 0; i < tokens.size; i++) {
+			out.writeVarInt(tokens.kinds[i]);
+			// positions increase, so the gap since the previous token is small
+			out.writeVarInt(tokens.pos[i] - previous);
+			out.writeVarInt(tokens.length[i]);
+			out.writeVarInt(tokens.values[i]);
+			previous = tokens.pos[i];
+		}
+		out.writeVarInt(lines.size);
+		previous = 0;
+		for (int i = 0; i < lines.size; i++) {
+			out.writeVarInt(lines.starts[i] - previous);
+			previous = lines.starts[i];
+		}
+		out.writeVarInt(symbols.size());
+		for (int id = 0; id < symbols.size(); id++) {
+			String name = symbols.name(id);
+			out.writeVarInt(name.length());
+			for (int i = 0; i < name.length(); i++) {
+				out.writeByte(name.charAt(i));
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns a Scanner for source holding the tokens, line starts and
+	 * symbols of the given encoding, or null if it cannot be decoded.
+	 */
+	static Scanner decode(byte[] source, byte[] encoded) {
+		Scanner scanner = new Scanner(source);
+		ByteBuffer in = ByteBuffer.wrap(encoded);
+		try {
+			if (in.getInt() != MAGIC) {
+				return null;
+			}
+			// each token takes at least four bytes
+			int n = readVarInt(in);
+			if (n < 0 || n > in.remaining() / 4) {
+				return null;
+			}
+			TokenBuffer tokens = scanner.tokens;
+			tokens.ensureCapacity(n);
+			// a five byte varint can be negative, so every int is range checked
+			int pos = 0;
+			for (int i = 0; i < n; i++) {
+				int kind = readVarInt(in);
+				if (kind < 0 || kind >= TokenBuffer.KINDS.length) {
+					return null;
+				}
+				int gap = readVarInt(in);
+				if (gap < 0 || gap > source.length - pos) {
+					return null;
+				}
+				pos += gap;
+				int length = readVarInt(in);
+				int value = readVarInt(in);
+				if (length < 0 || length > source.length - pos || value < 0) {
+					return null;
+				}
+				tokens.add(TokenBuffer.KINDS[kind], pos, length, value);
+			}
+			int lineCount = readVarInt(in);
+			if (lineCount < 0 || lineCount > in.remaining()) {
+				return null;
+			}
+			LineIndex lines = scanner.lines;
+			lines.size = 0;
+			// line starts ascend from 0 and are within the source
+			pos = 0;
+			for (int i = 0; i < lineCount; i++) {
+				int gap = readVarInt(in);
+				if (gap < 0 || gap > source.length - pos || (i == 0 ? gap != 0 : gap == 0)) {
+					return null;
+				}
+				pos += gap;
+				lines.add(pos);
+			}
+			int symbolCount = readVarInt(in);
+			char[] name = new char[16];
+			for (int id = 0; id < symbolCount; id++) {
+				int length = readVarInt(in);
+				if (length < 0 || length > in.remaining()) {
+					return null;
+				}
+				if (length > name.length) {
+					name = new char[Math.max(length, 2 * name.length)];
+				}
+				for (int i = 0; i < length; i++) {
+					name[i] = (char) (in.get() & 0xff);
+				}
+				if (scanner.symbols.intern(name, 0, length) != id) {
+					return null;
+				}
+			}
+			if (in.hasRemaining() || n == 0 || tokens.kind(n - 1) != Kind.EOF || lineCount == 0
+					|| tokens.pos[n - 1] != source.length) {
+				return null;
+			}
+			for (int i = 0; i < n; i++) {
+				if (tokens.kinds[i] == Kind.IDENTIFIER.ordinal() && tokens.values[i] >= symbolCount) {
+					return null;
+				}
+			}
+		} catch (BufferUnderflowException e) {
+			return null;
+		}
+		scanner.scanned();
+		return scanner;
+	}
+
+	/**
+	 * Returns the contents of entry, or null if there is no such entry.
+	 */
+	private static byte[] read(Path entry) throws IOException {
+		try {
+			return Files.readAllBytes(entry);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes entry through a temporary file, so that a concurrent reader
+	 * never sees a partly written entry.
+	 */
+	private void write(Path entry, byte[] encoded) throws IOException {
+		Path temp = Files.createTempFile(dir, "entry", ".tmp");
+		try {
+			Files.write(temp, encoded);
+			try {
+				Files.move(temp, entry, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static void touch(Path entry) {
+		try {
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			// only affects the order of eviction
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries until the entries take at most
+	 * maxBytes.
+	 */
+	private void evict() throws IOException {
+		List<Path> entries = entries();
+		long size = 0;
+		for (Path entry : entries) {
+			size += sizeOf(entry);
+		}
+		if (size <= maxBytes) {
+			return;
+		}
+		final List<FileTime> times = new ArrayList<>();
+		for (Path entry : entries) {
+			times.add(lastModified(entry));
+		}
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < entries.size(); i++) {
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return times.get(a).compareTo(times.get(b));
+			}
+		});
+		for (int i = 0; i < order.size() && size > maxBytes; i++) {
+			Path entry = entries.get(order.get(i));
+			size -= sizeOf(entry);
+			Files.deleteIfExists(entry);
+		}
+	}
+
+	private List<Path> entries() throws IOException {
+		List<Path> entries = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+			for (Path entry : stream) {
+				entries.add(entry);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Size of entry, or 0 if it has been deleted by another process.
+	 */
+	private static long sizeOf(Path entry) throws IOException {
+		try {
+			return Files.size(entry);
+		} catch (NoSuchFileException e) {
+			return 0;
+		}
+	}
+
+	private static FileTime lastModified(Path entry) throws IOException {
+		try {
+			return Files.getLastModifiedTime(entry);
+		} catch (NoSuchFileException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private static int readVarInt(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new BufferUnderflowException();
+	}
+
+	/**
+	 * Growable byte array with variable length int encoding: seven bits per
+	 * byte, low bits first, with the high bit set on all but the last byte.
+	 */
+	private static final class Encoder {
+
+		private byte[] bytes;
+		private int size;
+
+		Encoder(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		void writeByte(int b) {
+			if (size == bytes.length) {
+				bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+			}
+			bytes[size++] = (byte) b;
+		}
+
+		void writeInt(int value) {
+			writeByte(value >>> 24);
+			writeByte(value >>> 16);
+			writeByte(value >>> 8);
+			writeByte(value);
+		}
+
+		void writeVarInt(int value) {
+			while ((value & ~0x7f) != 0) {
+				writeByte((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			writeByte(value);
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, size);
+		}
+	}
+
+}
@@ -0,0 +1,189 @@
+package cop5556fa17;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import cop5556fa17.Scanner.Kind;
+import cop5556fa17.Scanner.LexicalException;
+
+public class TokenCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	static final String PROGRAM = "prog int k = 42;// comment\r\n image[x,y] i <- \"a\\tb\";\rk = k <= 0 ? 1 : k * 2;\nk -> SCREEN;\n";
+
+	Path write(String name, String text) throws Exception {
+		Path file = folder.getRoot().toPath().resolve(name);
+		Files.write(file, text.getBytes(StandardCharsets.ISO_8859_1));
+		return file;
+	}
+
+	/**
+	 * Checks that scanner has the same tokens, with the same text and values,
+	 * as a Scanner for input.
+	 */
+	void checkSameTokens(String input, Scanner scanner) throws LexicalException {
+		Scanner expected = new Scanner(input).scan();
+		assertEquals(expected.toString(), scanner.toString());
+		for (int i = 0; i < expected.size(); i++) {
+			Scanner.Token t = expected.tokenAt(i);
+			Scanner.Token u = scanner.tokenAt(i);
+			assertEquals(t.getText(), u.getText());
+			if (t.kind == Kind.IDENTIFIER) {
+				assertEquals(t.symbol(), u.symbol());
+			} else if (t.kind == Kind.INTEGER_LITERAL) {
+				assertEquals(t.intVal(), u.intVal());
+			}
+		}
+	}
+
+	@Test
+	public void hitTest() throws Exception {
+		TokenCache cache = new TokenCache(folder.newFolder("cache").toPath(), 1 << 20);
+		Path file = write("a.dsl", PROGRAM);
+		checkSameTokens(PROGRAM, cache.scan(file));
+		Path entry = cache.entry(Files.readAllBytes(file));
+		assertTrue(Files.exists(entry));
+		long size = cache.size();
+		checkSameTokens(PROGRAM, cache.scan(file));
+		assertEquals(size, cache.size());
+		assertEquals(new Parser(new Scanner(PROGRAM).scan()).parse().toString(),
+				new Parser(cache.scan(file)).parse().toString());
+	}
+
+	@Test
+	public void invalidationTest() throws Exception {
+		TokenCache cache = new TokenCache(folder.newFolder("cache").toPath(), 1 << 20);
+		Path file = write("a.dsl", PROGRAM);
+		cache.scan(file);
+		Path entry = cache.entry(Files.readAllBytes(file));
+		// a changed file gets a new entry
+		String changed = PROGRAM.replace("42", "43");
+		write("a.dsl", changed);
+		checkSameTokens(changed, cache.scan(file));
+		assertNotEquals(entry, cache.entry(Files.readAllBytes(file)));
+		cache.invalidate(file);
+		assertFalse(Files.exists(cache.entry(Files.readAllBytes(file))));
+		// a corrupt entry is replaced
+		write("a.dsl", PROGRAM);
+		Files.write(entry, new byte[] { 'T', 'o', 'k', 's', 1, 2, 3 });
+		checkSameTokens(PROGRAM, cache.scan(file));
+		checkSameTokens(PROGRAM, cache.scan(file));
+		byte[] encoded = Files.readAllBytes(entry);
+		for (int i = 0; i < encoded.length; i++) {
+			encoded[i] ^= 0x55;
+			TokenCache.decode(PROGRAM.getBytes(StandardCharsets.ISO_8859_1), encoded);
+			encoded[i] ^= 0x55;
+		}
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	/**
+	 * Returns an entry for the source "p" with the given ints in place of the
+	 * kind, position gap and length of its IDENTIFIER token, and the given
+	 * line starts, written as variable length ints.
+	 */
+	static byte[] entry(int kind, int gap, int length, int... lineGaps) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write('T');
+		out.write('o');
+		out.write('k');
+		out.write('s');
+		int[] ints = { 2, kind, gap, length, 0, Kind.EOF.ordinal(), 1, 0, 0 };
+		for (int i : ints) {
+			writeVarInt(out, i);
+		}
+		writeVarInt(out, lineGaps.length);
+		for (int i : lineGaps) {
+			writeVarInt(out, i);
+		}
+		writeVarInt(out, 1);
+		writeVarInt(out, 1);
+		out.write('p');
+		return out.toByteArray();
+	}
+
+	static void writeVarInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7f) != 0) {
+			out.write((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	@Test
+	public void corruptEntryTest() throws Exception {
+		byte[] source = { 'p' };
+		int ident = Kind.IDENTIFIER.ordinal();
+		assertNotNull(TokenCache.decode(source, entry(ident, 0, 1, 0)));
+		// -1 is the five byte varint ff ff ff ff 0f
+		assertNull(TokenCache.decode(source, entry(-1, 0, 1, 0)));
+		assertNull(TokenCache.decode(source, entry(Integer.MIN_VALUE, 0, 1, 0)));
+		assertNull(TokenCache.decode(source, entry(ident, -1, 1, 0)));
+		assertNull(TokenCache.decode(source, entry(ident, 0, -1, 0)));
+		assertNull(TokenCache.decode(source, entry(ident, 0, 2, 0)));
+		// line starts must ascend from 0 within the source
+		assertNull(TokenCache.decode(source, entry(ident, 0, 1, -1)));
+		assertNull(TokenCache.decode(source, entry(ident, 0, 1, 1)));
+		assertNull(TokenCache.decode(source, entry(ident, 0, 1, 0, 0)));
+		assertNull(TokenCache.decode(source, entry(ident, 0, 1, 0, 2)));
+		assertNotNull(TokenCache.decode(source, entry(ident, 0, 1, 0, 1)));
+		// the cache scans the file again and replaces the entry
+		TokenCache cache = new TokenCache(folder.newFolder("cache").toPath(), 1 << 20);
+		Path file = write("p.dsl", "p");
+		Path entry = cache.entry(source);
+		Files.write(entry, entry(-1, 0, 1, 0));
+		checkSameTokens("p", cache.scan(file));
+		assertNotNull(TokenCache.decode(source, Files.readAllBytes(entry)));
+	}
+
+	@Test
+	public void lexicalErrorTest() throws Exception {
+		TokenCache cache = new TokenCache(folder.newFolder("cache").toPath(), 1 << 20);
+		Path file = write("a.dsl", "prog int k = 99999999999;");
+		try {
+			cache.scan(file);
+			fail("expected LexicalException");
+		} catch (LexicalException e) {
+			assertEquals(0, cache.size());
+		}
+	}
+
+	@Test
+	public void evictionTest() throws Exception {
+		Path dir = folder.newFolder("cache").toPath();
+		Path first = write("first.dsl", PROGRAM);
+		int entrySize = TokenCache.encode(new Scanner(Files.readAllBytes(first)).scan()).length;
+		TokenCache cache = new TokenCache(dir, 3 * entrySize + entrySize / 2);
+		cache.scan(first);
+		for (int i = 0; i < 10; i++) {
+			cache.scan(write("f" + i + ".dsl", PROGRAM.replace("42", "4" + i)));
+			assertTrue(cache.size() <= 3 * entrySize + entrySize / 2);
+		}
+		assertEquals(3, count(dir));
+		assertFalse(Files.exists(cache.entry(Files.readAllBytes(first))));
+	}
+
+	static int count(Path dir) throws Exception {
+		int n = 0;
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, "*" + TokenCache.SUFFIX)) {
+			for (Path entry : entries) {
+				assertNotNull(entry);
+				n++;
+			}
+		}
+		return n;
+	}
+
+}
@@ -0,0 +1,108 @@
+package cop5556fa17;
+
+/**
+ * Characters of a token, as a view of the char array of the Scanner rather
+ * than a copy, see Token.text.
+ *
+ * hashCode is the hashCode of the String with the same characters, and a
+ * TokenText is equal to any other TokenText with the same characters.  Use
+ * contentEquals to compare with a String.  Only toString creates a String.
+ *
+ */
+final class TokenText implements CharSequence, Comparable<CharSequence> {
+
+	private final char[] chars;
+	private final int start;
+	private final int length;
+
+	/**
+	 * cached hash, 0 until computed
+	 */
+	private int hash;
+
+	TokenText(char[] chars, int start, int length) {
+		this.chars = chars;
+		this.start = start;
+		this.length = length;
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+		}
+		return chars[start + index];
+	}
+
+	@Override
+	public CharSequence subSequence(int from, int to) {
+		if (from < 0 || to > length || from > to) {
+			throw new IndexOutOfBoundsException("from " + from + ", to " + to + ", length " + length);
+		}
+		return new TokenText(chars, start + from, to - from);
+	}
+
+	/**
+	 * Returns true if other has the same characters as this TokenText.
+	 */
+	public boolean contentEquals(CharSequence other) {
+		if (other.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (chars[start + i] != other.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares the characters of this TokenText and other lexicographically,
+	 * as String.compareTo does.
+	 */
+	@Override
+	public int compareTo(CharSequence other) {
+		int n = Math.min(length, other.length());
+		for (int i = 0; i < n; i++) {
+			int difference = chars[start + i] - other.charAt(i);
+			if (difference != 0) {
+				return difference;
+			}
+		}
+		return length - other.length();
+	}
+
+	@Override
+	public int hashCode() {
+		int h = hash;
+		if (h == 0) {
+			for (int i = start; i < start + length; i++) {
+				h = 31 * h + chars[i];
+			}
+			hash = h;
+		}
+		return h;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof TokenText))
+			return false;
+		TokenText other = (TokenText) obj;
+		return hashCode() == other.hashCode() && contentEquals(other);
+	}
+
+	@Override
+	public String toString() {
+		return new String(chars, start, length);
+	}
+
+}
@@ -11,6 +11,7 @@ import cop5556fa17.AST.Declaration_SourceSink;
 import cop5556fa17.AST.Declaration_Variable;
 import cop5556fa17.AST.Expression;
 import cop5556fa17.AST.Expression_FunctionAppWithExprArg;
+import cop5556fa17.AST.Expression_Ident;
 import cop5556fa17.AST.Expression_IntLit;
 import cop5556fa17.AST.Expression_PixelSelector;
 import cop5556fa17.AST.Expression_PredefinedName;
@@ -27,6 +28,7 @@ import cop5556fa17.Scanner.Kind;
 import cop5556fa17.Scanner.LexicalException;
 import cop5556fa17.Scanner.Token;
 import cop5556fa17.TypeCheckVisitor.SemanticException;
+import cop5556fa17.TypeUtils.Type;
 
 import static cop5556fa17.Scanner.Kind.*;
 
@@ -112,5 +114,147 @@ public class TypeCheckTest {
 	 typeCheck(input);
 	 }
 
+	/**
+	 * The declarations of the symbol table can be looked up by name.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testLookup() throws Exception {
+		Program program = new Parser(new Scanner("prog int k = 42; boolean b;").scan()).parse();
+		TypeCheckVisitor v = new TypeCheckVisitor();
+		program.visit(v, null);
+		assertSame(program.decsAndStatements.get(0), v.lookup("k"));
+		assertSame(program.decsAndStatements.get(1), v.lookup("b"));
+		assertNull(v.lookup("prog"));
+	}
+
+	/**
+	 * Names of tokens built with the public Token constructor, which have no
+	 * symbol id, are declared and looked up by name.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testUnscannedNames() throws Exception {
+		Scanner scanner = new Scanner("int abc = abc;");
+		Token type = scanner.new Token(KW_int, 0, 3, 1, 1);
+		Token name = scanner.new Token(IDENTIFIER, 4, 3, 1, 5);
+		assertEquals(-1, name.symbol());
+		Declaration_Variable declaration = new Declaration_Variable(type, type, name, null);
+		TypeCheckVisitor v = new TypeCheckVisitor();
+		declaration.visit(v, null);
+		assertSame(declaration, v.lookup("abc"));
+		Token use = scanner.new Token(IDENTIFIER, 10, 3, 1, 11);
+		Expression_Ident expression = new Expression_Ident(use, use);
+		assertEquals(Type.INTEGER, expression.visit(v, null));
+		thrown.expect(SemanticException.class);
+		declaration.visit(v, null);
+	}
+
+	/**
+	 * Returns a program of n declarations that type checks.
+	 */
+	static String declarations(int n) {
+		StringBuilder sb = new StringBuilder("prog int k0 = 1;\n");
+		for (int i = 1; i < n; i++) {
+			if (i % 2 == 0) {
+				sb.append("int k").append(i).append(" = k").append(i - 2).append(" * 2 + 1;\n");
+			} else {
+				sb.append("boolean k").append(i).append(" = k").append(i - 1).append(" > 3 & true;\n");
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The pipelined front end checks the same program as parsing and then
+	 * type checking, whether interleaved or on another thread.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testPipeline() throws Exception {
+		String input = declarations(1000) + "url u = \"http://x\"; image i <- u; file f = \"f\"; i -> f;";
+		Program expected = new Parser(new Scanner(input).scan()).parse();
+		expected.visit(new TypeCheckVisitor(), null);
+		Program interleaved = Pipeline.check(new Parser(new Scanner(input)), new TypeCheckVisitor());
+		assertEquals(expected.toString(), interleaved.toString());
+		// a small queue, so that the parser has to wait for the checker
+		Program concurrent = Pipeline.checkConcurrently(new Parser(new Scanner(input)), new TypeCheckVisitor(), 2);
+		assertEquals(expected.toString(), concurrent.toString());
+		Declaration_Variable last = (Declaration_Variable) concurrent.decsAndStatements.get(999);
+		assertEquals(Type.BOOLEAN, last.type_attribute);
+	}
+
+	/**
+	 * The pipelined front end reports the first error in program order.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testPipelineFirstError() throws Exception {
+		String semanticFirst = "prog int k = 1; int k = 2; int ;";
+		String syntaxFirst = "prog int k = 1; int ; int k = 2;";
+		for (int concurrent = 0; concurrent < 2; concurrent++) {
+			for (String input : new String[] { semanticFirst, syntaxFirst }) {
+				Parser parser = new Parser(new Scanner(input));
+				try {
+					if (concurrent == 0) {
+						Pipeline.check(parser, new TypeCheckVisitor());
+					} else {
+						Pipeline.checkConcurrently(parser, new TypeCheckVisitor(), Pipeline.QUEUE_CAPACITY);
+					}
+					fail(input);
+				} catch (SemanticException e) {
+					assertSame(input, semanticFirst, input);
+					assertTrue(e.getMessage(), e.getMessage().startsWith("line 1 pos 17:"));
+				} catch (SyntaxException e) {
+					assertSame(input, syntaxFirst, input);
+				}
+			}
+		}
+	}
+
+	/**
+	 * With a recovering Parser, syntax errors are only in the errors of the
+	 * Parser, and the other items are checked.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testPipelineRecovering() throws Exception {
+		String input = "prog int k = 1; int j = ; boolean b = k > 0;";
+		for (int concurrent = 0; concurrent < 2; concurrent++) {
+			Parser parser = new Parser(new Scanner(input)).recovering();
+			Program program = concurrent == 0 ? Pipeline.check(parser, new TypeCheckVisitor())
+					: Pipeline.checkConcurrently(parser, new TypeCheckVisitor(), Pipeline.QUEUE_CAPACITY);
+			assertEquals(1, parser.errors().size());
+			assertEquals(3, program.decsAndStatements.size());
+			assertEquals(Type.BOOLEAN, ((Declaration_Variable) program.decsAndStatements.get(2)).type_attribute);
+		}
+		try {
+			Pipeline.check(new Parser(new Scanner(input + " int k;")).recovering(), new TypeCheckVisitor());
+			fail();
+		} catch (SemanticException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("line 1 pos 46:"));
+		}
+	}
+
+	/**
+	 * A semantic error is reported before the rest of the input is scanned.
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testPipelineStopsAtSemanticError() throws Exception {
+		Scanner scanner = new Scanner("prog int k = true;\n" + declarations(100000).substring(5));
+		try {
+			Pipeline.check(new Parser(scanner), new TypeCheckVisitor());
+			fail();
+		} catch (SemanticException e) {
+			assertTrue(scanner.size() < 100);
+		}
+	}
 
 }
@@ -2,6 +2,7 @@ package cop5556fa17;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import cop5556fa17.Scanner.Kind;
@@ -14,6 +15,7 @@ import cop5556fa17.AST.Declaration;
 import cop5556fa17.AST.Declaration_Image;
 import cop5556fa17.AST.Declaration_SourceSink;
 import cop5556fa17.AST.Declaration_Variable;
+import cop5556fa17.AST.ErrorNode;
 import cop5556fa17.AST.Expression;
 import cop5556fa17.AST.Expression_Binary;
 import cop5556fa17.AST.Expression_BooleanLit;
@@ -40,15 +42,66 @@ import cop5556fa17.AST.Statement_Out;
 
 public class TypeCheckVisitor implements ASTVisitor {
 
-	public HashMap<String, ASTNode> symbolTable = new HashMap<>();
+	/**
+	 * Declarations indexed by the symbol id of the declared name, null for
+	 * names that have not been declared, and the ids of the declared names.
+	 * Names without an id, see Token.symbol, are declared by name.
+	 */
+	private ASTNode[] symbolTable = new ASTNode[64];
+	private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+	private final HashMap<String, ASTNode> unscanned = new HashMap<String, ASTNode>();
+
+	/**
+	 * Returns the declaration of the given name, or null if it has not been
+	 * declared.
+	 */
+	public ASTNode lookup(String name) {
+		Integer symbol = ids.get(name);
+		return symbol != null ? symbolTable[symbol] : unscanned.get(name);
+	}
+
+	/**
+	 * Returns the declaration of the name with the given symbol id, or null.
+	 * An id of -1 is looked up by name.
+	 */
+	ASTNode lookup(int symbol, String name) {
+		if (symbol < 0) {
+			return unscanned.get(name);
+		}
+		return symbol < symbolTable.length ? symbolTable[symbol] : null;
+	}
+
+	void declare(int symbol, String name, ASTNode declaration) {
+		if (symbol < 0) {
+			unscanned.put(name, declaration);
+			return;
+		}
+		if (symbol >= symbolTable.length) {
+			symbolTable = Arrays.copyOf(symbolTable, Math.max(symbol + 1, 2 * symbolTable.length));
+		}
+		symbolTable[symbol] = declaration;
+		ids.put(name, symbol);
+	}
 
 	@SuppressWarnings("serial")
 	public static class SemanticException extends Exception {
 		Token t;
+		private final String message;
 
 		public SemanticException(Token t, String message) {
 			super("line " + t.line + " pos " + t.pos_in_line + ": " + message);
 			this.t = t;
+			this.message = message;
+		}
+
+		/**
+		 * Returns the same error at token t, the token of this one in an
+		 * edited input, see Parser.locate.
+		 */
+		SemanticException at(Token t) {
+			SemanticException e = new SemanticException(t, message);
+			e.setStackTrace(getStackTrace());
+			return e;
 		}
 	}
 
@@ -70,10 +123,10 @@ public class TypeCheckVisitor implements ASTVisitor {
 	public Object visitDeclaration_Variable(Declaration_Variable declaration_Variable, Object arg) throws Exception {
 
 		String name = declaration_Variable.name;
-		if (symbolTable.containsKey(name)) {
+		if (lookup(declaration_Variable.symbol, declaration_Variable.name) != null) {
 			throw new SemanticException(declaration_Variable.firstToken, name + "already in symbol table");
 		} else {
-			symbolTable.put(name, declaration_Variable);
+			declare(declaration_Variable.symbol, declaration_Variable.name, declaration_Variable);
 		}
 		declaration_Variable.type_attribute = TypeUtils.getType(declaration_Variable.type);
 		Expression expression = declaration_Variable.e;
@@ -161,8 +214,8 @@ public class TypeCheckVisitor implements ASTVisitor {
 
 		String name = expression_PixelSelector.name;
 		expression_PixelSelector.index.visit(this, arg);
-		if (symbolTable.containsKey(name)) {
-			ASTNode decl = symbolTable.get(name);
+		ASTNode decl = lookup(expression_PixelSelector.symbol, expression_PixelSelector.name);
+		if (decl != null) {
 			if (decl.type_attribute == Type.IMAGE) {
 				expression_PixelSelector.type_attribute = Type.INTEGER;
 			} else if (expression_PixelSelector.index == null) {
@@ -205,10 +258,10 @@ public class TypeCheckVisitor implements ASTVisitor {
 		String name = declaration_Image.name;
 		declaration_Image.source.visit(this, arg);
 
-		if (symbolTable.containsKey(name)) {
+		if (lookup(declaration_Image.symbol, declaration_Image.name) != null) {
 			throw new SemanticException(declaration_Image.firstToken, name + " already in symbol table");
 		} else {
-			symbolTable.put(name, declaration_Image);
+			declare(declaration_Image.symbol, declaration_Image.name, declaration_Image);
 		}
 		if (declaration_Image.xSize != null) {
 			if (declaration_Image.ySize == null) {
@@ -256,11 +309,11 @@ public class TypeCheckVisitor implements ASTVisitor {
 	@Override
 	public Object visitSource_Ident(Source_Ident source_Ident, Object arg) throws Exception {
 
-		if (symbolTable.containsKey(source_Ident.name) == false) {
+		if (lookup(source_Ident.symbol, source_Ident.name) == null) {
 			throw new SemanticException(source_Ident.firstToken,
 					source_Ident.name + " not declared before use in source_Ident ");
 		}
-		source_Ident.type_attribute = symbolTable.get(source_Ident.name).type_attribute;
+		source_Ident.type_attribute = lookup(source_Ident.symbol, source_Ident.name).type_attribute;
 		if (source_Ident.type_attribute == Type.FILE || source_Ident.type_attribute == Type.URL) {
 			return source_Ident.type_attribute;
 		} else {
@@ -273,10 +326,10 @@ public class TypeCheckVisitor implements ASTVisitor {
 			throws Exception {
 
 		String name = declaration_SourceSink.name;
-		if (symbolTable.containsKey(name)) {
+		if (lookup(declaration_SourceSink.symbol, declaration_SourceSink.name) != null) {
 			throw new SemanticException(declaration_SourceSink.firstToken, name + " already in symbol table");
 		} else {
-			symbolTable.put(name, declaration_SourceSink);
+			declare(declaration_SourceSink.symbol, declaration_SourceSink.name, declaration_SourceSink);
 		}
 		declaration_SourceSink.type_attribute = TypeUtils.getType(declaration_SourceSink.type);
 		declaration_SourceSink.source.visit(this, arg);
@@ -324,7 +377,7 @@ public class TypeCheckVisitor implements ASTVisitor {
 	@Override
 	public Object visitStatement_Out(Statement_Out statement_Out, Object arg) throws Exception {
 		statement_Out.sink.visit(this, arg);
-		ASTNode decl = symbolTable.get(statement_Out.name);
+		ASTNode decl = lookup(statement_Out.symbol, statement_Out.name);
 
 		if (decl != null && (((decl.type_attribute == Type.INTEGER || decl.type_attribute == Type.BOOLEAN)
 				&& statement_Out.sink.type_attribute == Type.SCREEN)
@@ -343,7 +396,7 @@ public class TypeCheckVisitor implements ASTVisitor {
 	@Override
 	public Object visitStatement_In(Statement_In statement_In, Object arg) throws Exception {
 		statement_In.source.visit(this, arg);
-		ASTNode decl = symbolTable.get(statement_In.name);
+		ASTNode decl = lookup(statement_In.symbol, statement_In.name);
 
 		if (decl == null) {
 			throw new SemanticException(statement_In.firstToken, "In statement in, name not declaed before use");
@@ -375,11 +428,11 @@ public class TypeCheckVisitor implements ASTVisitor {
 	@Override
 	public Object visitLHS(LHS lhs, Object arg) throws Exception {
 
-		if (symbolTable.containsKey(lhs.name) == false) {
+		if (lookup(lhs.symbol, lhs.name) == null) {
 			throw new SemanticException(lhs.firstToken, lhs.name + " not declared before use in LHS ");
 		}
 
-		lhs.declaration = (Declaration) symbolTable.get(lhs.name);
+		lhs.declaration = (Declaration) lookup(lhs.symbol, lhs.name);
 		lhs.type_attribute = lhs.declaration.type_attribute;
 		lhs.index.visit(this, arg);
 		lhs.isCartesian = lhs.index.isCartesian();
@@ -395,11 +448,11 @@ public class TypeCheckVisitor implements ASTVisitor {
 
 	@Override
 	public Object visitSink_Ident(Sink_Ident sink_Ident, Object arg) throws Exception {
-		if (symbolTable.containsKey(sink_Ident.name) == false) {
+		if (lookup(sink_Ident.symbol, sink_Ident.name) == null) {
 			throw new SemanticException(sink_Ident.firstToken,
 					sink_Ident.name + " not declared before use in sink_ident ");
 		}
-		sink_Ident.type_attribute = symbolTable.get(sink_Ident.name).type_attribute;
+		sink_Ident.type_attribute = lookup(sink_Ident.symbol, sink_Ident.name).type_attribute;
 		if (sink_Ident.type_attribute == Type.FILE) {
 			return sink_Ident.type_attribute;
 		} else {
@@ -416,11 +469,19 @@ public class TypeCheckVisitor implements ASTVisitor {
 
 	@Override
 	public Object visitExpression_Ident(Expression_Ident expression_Ident, Object arg) throws Exception {
-		if (symbolTable.containsKey(expression_Ident.name) == false) {
+		if (lookup(expression_Ident.symbol, expression_Ident.name) == null) {
 			throw new SemanticException(expression_Ident.firstToken,
 					expression_Ident.name + " not declared before use in expression_Ident ");
 		}
-		expression_Ident.type_attribute = symbolTable.get(expression_Ident.name).type_attribute;
+		expression_Ident.type_attribute = lookup(expression_Ident.symbol, expression_Ident.name).type_attribute;
 		return expression_Ident.type_attribute;
 	}
+
+	/**
+	 * A Program with syntax errors cannot be type checked.
+	 */
+	@Override
+	public Object visitErrorNode(ErrorNode errorNode, Object arg) throws Exception {
+		throw new SemanticException(errorNode.errorToken, "syntax error: " + errorNode.message);
+	}
 }